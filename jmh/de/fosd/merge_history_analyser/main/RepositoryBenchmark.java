@@ -0,0 +1,94 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.data.Merge;
+import de.fosd.merge_history_analyser.util.Logger;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the operations on the git history which need no working tree.
+ *
+ * @author Martin Gruber
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    @Param({"1000", "10000"})
+    public int commits;
+
+    @Param({"100"})
+    public int merges;
+
+    @Param({"200"})
+    public int files;
+
+    @Param({"10"})
+    public int conflictPercent;
+
+    private File directory;
+
+    private Repository repository;
+
+    private Project project;
+
+    private List<RevCommit> mergeCommits;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("synthetic").toFile();
+        Logger.init(new File(directory, "benchmark.log").getPath(), false);
+        File repositoryDir = new File(directory, "repository");
+        SyntheticRepository.create(repositoryDir, commits, merges, files, conflictPercent);
+        repository = new RepositoryBuilder().findGitDir(repositoryDir).build();
+        project = new Project(repositoryDir.getPath(), null, null, null, false);
+        mergeCommits = project.getMergeCommits();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        project.close();
+        repository.close();
+        Logger.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public List<RevCommit> getMergeCommits() {
+        //A new enumerator, the merges of an enumerator are only searched once
+        return new MergeEnumerator(repository).getMerges();
+    }
+
+    @Benchmark
+    public Merge mergeInMemory() {
+        RevCommit mergeCommit = mergeCommits.get(next++ % mergeCommits.size());
+        return project.mergeInMemory(mergeCommit);
+    }
+}
@@ -0,0 +1,115 @@
+package de.fosd.merge_history_analyser.main;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.CompactWriter;
+import com.thoughtworks.xstream.io.xml.PrettyPrintWriter;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+import de.fosd.merge_history_analyser.data.AnalysedCommit;
+import de.fosd.merge_history_analyser.data.Build;
+import de.fosd.merge_history_analyser.data.Merge;
+import de.fosd.merge_history_analyser.data.MergeScenario;
+import de.fosd.merge_history_analyser.data.Tests;
+import de.fosd.merge_history_analyser.util.RecordCodec;
+import de.fosd.merge_history_analyser.util.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks recording and writing the results of a merge scenario with the given number of tests per commit.
+ *
+ * @author Martin Gruber
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResultBenchmark {
+
+    @Param({"100", "10000"})
+    public int tests;
+
+    private String[] names;
+
+    private MergeScenario mergeScenario;
+
+    private XStream xstream;
+
+    private RecordCodec codec;
+
+    private String record;
+
+    private String compactXml;
+
+    @Setup
+    public void setUp() {
+        names = SyntheticRepository.testNames(tests);
+        mergeScenario = new MergeScenario("1111111111111111111111111111111111111111",
+                "2222222222222222222222222222222222222222", "3333333333333333333333333333333333333333");
+        Merge merge = new Merge();
+        merge.setState("MERGED");
+        mergeScenario.setMerge(merge);
+        mergeScenario.setBuild(new Build("SUCCESSFUL", 42));
+        mergeScenario.setTests(addTestCases());
+        for (AnalysedCommit commit : new AnalysedCommit[]{
+                mergeScenario.getParent1(), mergeScenario.getParent2(), mergeScenario.getPushed()}) {
+            commit.setBuild(new Build("SUCCESSFUL", 42));
+            commit.setTests(addTestCases());
+        }
+
+        //Configured like the XmlResultWriter
+        xstream = new XStream(new StaxDriver());
+        xstream.processAnnotations(Project.class);
+        xstream.setMode(XStream.NO_REFERENCES);
+        codec = new RecordCodec();
+        record = codec.encode(mergeScenario);
+        StringWriter writer = new StringWriter();
+        xstream.marshal(mergeScenario, new CompactWriter(writer));
+        compactXml = writer.toString();
+    }
+
+    @Benchmark
+    public Tests addTestCases() {
+        Tests tests = new Tests();
+        for (int i = 0; i < names.length; i++) {
+            tests.addTestCase(names[i], i % 10 == 0 ? "fail" : "pass", "0.042");
+        }
+        tests.trimToSize();
+        return tests;
+    }
+
+    @Benchmark
+    public String writeXml() {
+        StringWriter writer = new StringWriter();
+        xstream.marshal(mergeScenario, new PrettyPrintWriter(writer, "  ".toCharArray()));
+        return writer.toString();
+    }
+
+    @Benchmark
+    public String encodeRecord() {
+        return codec.encode(mergeScenario);
+    }
+
+    @Benchmark
+    public Object decodeRecord() {
+        return codec.decode(record);
+    }
+
+    @Benchmark
+    public String formatXml() {
+        return Util.formatXml(compactXml);
+    }
+}
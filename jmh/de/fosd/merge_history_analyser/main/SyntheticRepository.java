@@ -0,0 +1,198 @@
+package de.fosd.merge_history_analyser.main;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates git repositories of a given size for the benchmarks.
+ * <p>
+ * The history consists of merges of short side branches into master. Master only changes files with an even index,
+ * side branches only files with an odd index, so the merges are clean unless a conflict is requested: then the side
+ * branch also changes a line which was changed on master. The objects are written directly, without working tree,
+ * so even large repositories are generated quickly. The same parameters always give the same commit IDs.
+ *
+ * @author Martin Gruber
+ */
+class SyntheticRepository {
+
+    private static final int LINES = 20;
+
+    private final ObjectInserter inserter;
+
+    private final Random random = new Random(42);
+
+    private final int files;
+
+    private final String[][] master;
+
+    private final String[][] side;
+
+    /**
+     * Contents are copied on change, so the blob of an unchanged file is found by identity
+     */
+    private final Map<String[], ObjectId> blobs = new IdentityHashMap<>();
+
+    private long time = 1262304000L;
+
+    private int number;
+
+    /**
+     * Line changed by the last call of {@link #change(String[][], int)}
+     */
+    private int changedLine;
+
+    private SyntheticRepository(Repository repository, int files) {
+        this.inserter = repository.newObjectInserter();
+        this.files = files;
+        master = new String[files][LINES];
+        for (int i = 0; i < files; i++) {
+            for (int line = 0; line < LINES; line++) {
+                master[i][line] = "file " + i + " line " + line;
+            }
+        }
+        side = new String[files][];
+    }
+
+    /**
+     * Creates a repository with master checked out.
+     *
+     * @param directory       empty directory for the repository
+     * @param commits         number of commits, including the merges
+     * @param merges          number of merges, each merging a side branch into master
+     * @param files           number of files, at least 2
+     * @param conflictPercent share of merges in which both parents change the same line
+     * @throws IOException if the repository can not be written
+     */
+    static void create(File directory, int commits, int merges, int files, int conflictPercent) throws IOException {
+        try (Git git = Git.init().setDirectory(directory).call()) {
+            SyntheticRepository generator = new SyntheticRepository(git.getRepository(), Math.max(2, files));
+            ObjectId head = generator.generate(commits, merges, conflictPercent);
+            generator.inserter.flush();
+            generator.inserter.close();
+
+            RefUpdate update = git.getRepository().updateRef(Constants.R_HEADS + Constants.MASTER);
+            update.setNewObjectId(head);
+            update.forceUpdate();
+            git.reset().setMode(ResetCommand.ResetType.HARD).setRef(Constants.MASTER).call();
+        } catch (GitAPIException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private ObjectId generate(int commits, int merges, int conflictPercent) throws IOException {
+        ObjectId head = commit(tree(master), "Initial commit");
+        int remaining = Math.max(0, commits - 1 - merges);
+        //Both parents of a merge need at least one own commit
+        int branchLength = merges == 0 ? 0 : Math.max(1, remaining / (2 * merges));
+        for (int merge = 0; merge < merges; merge++) {
+            for (int i = 0; i < files; i++) {
+                side[i] = master[i].clone();
+            }
+            ObjectId sideHead = head;
+            int conflictFile = -1;
+            int conflictLine = -1;
+            for (int i = 0; i < branchLength; i++) {
+                conflictFile = change(master, 0);
+                conflictLine = changedLine;
+                head = commit(tree(master), "Change on master", head);
+                change(side, 1);
+                sideHead = commit(tree(side), "Change on branch " + merge, sideHead);
+                remaining -= 2;
+            }
+            if (random.nextInt(100) < conflictPercent) {
+                side[conflictFile] = side[conflictFile].clone();
+                side[conflictFile][conflictLine] = "conflicting change " + number;
+                sideHead = commit(tree(side), "Conflicting change on branch " + merge, sideHead);
+                remaining--;
+            }
+            //The pushed merge takes the side of master for conflicting lines
+            for (int i = 1; i < files; i += 2) {
+                master[i] = side[i];
+            }
+            head = commit(tree(master), "Merge branch " + merge, head, sideHead);
+        }
+        for (; remaining > 0; remaining--) {
+            change(master, 0);
+            head = commit(tree(master), "Change on master", head);
+        }
+        return head;
+    }
+
+    /**
+     * Changes a random line of a random file with the given parity.
+     *
+     * @return index of the changed file
+     */
+    private int change(String[][] contents, int parity) {
+        int file = random.nextInt((files - parity + 1) / 2) * 2 + parity;
+        changedLine = random.nextInt(LINES);
+        contents[file] = contents[file].clone();
+        contents[file][changedLine] = "change " + number;
+        return file;
+    }
+
+    private ObjectId tree(String[][] contents) throws IOException {
+        TreeFormatter src = new TreeFormatter();
+        for (int i = 0; i < files; i++) {
+            src.append(String.format("File%06d.java", i), FileMode.REGULAR_FILE,
+                    blobs.computeIfAbsent(contents[i], this::blob));
+        }
+        TreeFormatter root = new TreeFormatter();
+        root.append("src", FileMode.TREE, inserter.insert(src));
+        return inserter.insert(root);
+    }
+
+    private ObjectId blob(String[] lines) {
+        StringBuilder content = new StringBuilder();
+        for (String line : lines) {
+            content.append(line).append('\n');
+        }
+        try {
+            return inserter.insert(Constants.OBJ_BLOB, content.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ObjectId commit(ObjectId tree, String message, ObjectId... parents) throws IOException {
+        PersonIdent ident = new PersonIdent("Synthetic", "synthetic@example.com",
+                (time += 60) * 1000, 0);
+        CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(tree);
+        commit.setParentIds(parents);
+        commit.setAuthor(ident);
+        commit.setCommitter(ident);
+        commit.setMessage(message + " " + number++ + "\n");
+        return inserter.insert(commit);
+    }
+
+    /**
+     * @param tests number of test names
+     * @return test names spread over classes of 20 tests each, e.g. synthetic.Class3.test7
+     */
+    static String[] testNames(int tests) {
+        String[] names = new String[tests];
+        for (int i = 0; i < tests; i++) {
+            names[i] = "synthetic.Class" + i / 20 + ".test" + i % 20;
+        }
+        return names;
+    }
+}
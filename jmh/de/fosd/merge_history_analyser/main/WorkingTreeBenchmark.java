@@ -0,0 +1,106 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.data.Merge;
+import de.fosd.merge_history_analyser.data.MergeScenario;
+import de.fosd.merge_history_analyser.util.Logger;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the operations which change the working tree.
+ * Before every invocation the first parent of the next merge is checked out, as it is after a merge or a build.
+ *
+ * @author Martin Gruber
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WorkingTreeBenchmark {
+
+    @Param({"1000"})
+    public int commits;
+
+    @Param({"100"})
+    public int merges;
+
+    @Param({"200", "5000"})
+    public int files;
+
+    @Param({"10"})
+    public int conflictPercent;
+
+    private File directory;
+
+    private Git git;
+
+    private Project project;
+
+    private List<RevCommit> mergeCommits;
+
+    private int next;
+
+    private RevCommit mergeCommit;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("synthetic").toFile();
+        Logger.init(new File(directory, "benchmark.log").getPath(), false);
+        File repositoryDir = new File(directory, "repository");
+        SyntheticRepository.create(repositoryDir, commits, merges, files, conflictPercent);
+        git = Git.open(repositoryDir);
+        project = new Project(repositoryDir.getPath(), null, null, null, false);
+        mergeCommits = project.getMergeCommits();
+    }
+
+    @Setup(Level.Invocation)
+    public void checkoutParent() throws GitAPIException {
+        project.checkoutDefaultBranch();
+        mergeCommit = mergeCommits.get(next++ % mergeCommits.size());
+        git.checkout().setName(mergeCommit.getParent(0).getName()).call();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        project.close();
+        git.close();
+        Logger.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public Merge merge() {
+        MergeScenario mergeScenario = new MergeScenario(mergeCommit.getName(), mergeCommit.getParent(0).getName(),
+                mergeCommit.getParent(1).getName());
+        project.merge(mergeCommit, mergeScenario);
+        return mergeScenario.getMerge();
+    }
+
+    @Benchmark
+    public void checkoutDefaultBranch() {
+        project.checkoutDefaultBranch();
+    }
+}
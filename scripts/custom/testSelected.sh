@@ -0,0 +1,18 @@
+#!/usr/bin/env bash
+
+# Test-script for --select-tests: $2 is a comma separated list of the test classes to run
+
+cd "$1" || exit 1
+
+if [ -e "gradlew" ]
+then
+    ./gradlew cleanTest
+    if [ -n "$2" ]
+    then
+        ./gradlew test $(echo "$2" | tr ',' '\n' | sed 's/^/--tests /')
+    else
+        ./gradlew test
+    fi
+else
+    echo NO BUILD POSSIBLE
+fi
@@ -1,14 +1,11 @@
 #!/usr/bin/env bash
 
-#cat collectResults >> "$1"/build.gradle
-
 cd "$1" || exit 1
 
 if [[ -e "gradlew" ]]
 then
     ./gradlew cleanTest
     ./gradlew test
-    ./gradlew collectResults
 else
     echo NO BUILD POSSIBLE
 fi
\ No newline at end of file
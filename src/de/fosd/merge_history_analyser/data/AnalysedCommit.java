@@ -1,11 +1,18 @@
 package de.fosd.merge_history_analyser.data;
 
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+
 /**
  * Created by martin on 18.05.16.
  */
 public class AnalysedCommit {
     String commitID;
 
+    /**
+     * An attribute, so the children keep the positions of the result schema: commitID, build, tests
+     */
+    @XStreamAsAttribute
+    String tree;
 
     Build build;
     Tests tests;
@@ -30,6 +37,17 @@ public class AnalysedCommit {
         this.tests = tests;
     }
 
+    /**
+     * @return ID of the tree which was built and tested, null if the commit was not analysed
+     */
+    public String getTree() {
+        return tree;
+    }
+
+    public void setTree(String tree) {
+        this.tree = tree;
+    }
+
     public String getCommitID() {
         return commitID;
     }
@@ -0,0 +1,200 @@
+package de.fosd.merge_history_analyser.data;
+
+import com.thoughtworks.xstream.annotations.XStreamConverter;
+
+import java.util.Arrays;
+
+/**
+ * Conflicting files of a merge with their conflict chunks.
+ * <p>
+ * Like {@link Tests}, the data is stored column by column in primitive arrays, so merges with thousands of
+ * conflicting chunks need no object per chunk: per file the path, the {@link ConflictType} as byte and the index
+ * of its first chunk; per chunk the lines of both parents as four ints. Serialized by
+ * {@link ConflictDetailsConverter}.
+ * <p>
+ * A chunk consists of the conflicting lines of the first and of the second parent. Lines are counted from 0,
+ * the end of a range is exclusive, so an empty range (e.g. the deleted side of a modify/delete conflict)
+ * has the same begin and end.
+ *
+ * @author Martin Gruber
+ */
+@XStreamConverter(ConflictDetailsConverter.class)
+public class ConflictDetails {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private static final int FIELDS = 4;
+
+    private int files;
+
+    private String[] paths;
+
+    private byte[] types;
+
+    /**
+     * Index of the first chunk of each file, the chunks of a file end with the first chunk of the next file
+     */
+    private int[] firstChunks;
+
+    private int chunks;
+
+    /**
+     * Begin and end in the first parent, begin and end in the second parent, for every chunk
+     */
+    private int[] lines;
+
+    public ConflictDetails() {
+        paths = new String[0];
+        types = new byte[0];
+        firstChunks = new int[0];
+        lines = new int[0];
+    }
+
+    /**
+     * Adds a conflicting file, the following chunks belong to this file.
+     *
+     * @param path path of the file
+     * @param type kind of the conflict
+     */
+    public void addFile(String path, ConflictType type) {
+        if (files == paths.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, files + (files >> 1));
+            paths = Arrays.copyOf(paths, capacity);
+            types = Arrays.copyOf(types, capacity);
+            firstChunks = Arrays.copyOf(firstChunks, capacity);
+        }
+        paths[files] = path;
+        types[files] = type.toByte();
+        firstChunks[files] = chunks;
+        files++;
+    }
+
+    /**
+     * Adds a conflict chunk to the last added file.
+     *
+     * @param begin1 first conflicting line of the first parent
+     * @param end1   line after the last conflicting line of the first parent
+     * @param begin2 first conflicting line of the second parent
+     * @param end2   line after the last conflicting line of the second parent
+     */
+    public void addChunk(int begin1, int end1, int begin2, int end2) {
+        if (files == 0) {
+            throw new IllegalStateException("No file to add the chunk to");
+        }
+        if (chunks * FIELDS == lines.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, chunks + (chunks >> 1));
+            lines = Arrays.copyOf(lines, capacity * FIELDS);
+        }
+        int offset = chunks * FIELDS;
+        lines[offset] = begin1;
+        lines[offset + 1] = end1;
+        lines[offset + 2] = begin2;
+        lines[offset + 3] = end2;
+        chunks++;
+    }
+
+    /**
+     * Releases the unused capacity of the arrays once all files and chunks are added.
+     */
+    public void trimToSize() {
+        if (files < paths.length) {
+            paths = Arrays.copyOf(paths, files);
+            types = Arrays.copyOf(types, files);
+            firstChunks = Arrays.copyOf(firstChunks, files);
+        }
+        if (chunks * FIELDS < lines.length) {
+            lines = Arrays.copyOf(lines, chunks * FIELDS);
+        }
+    }
+
+    /**
+     * @return number of conflicting files
+     */
+    public int getFiles() {
+        return files;
+    }
+
+    /**
+     * @return number of conflict chunks in all files
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return number of conflicting lines of both parents in all files
+     */
+    public int getLines() {
+        return countLines(0, chunks);
+    }
+
+    public String getPath(int file) {
+        checkFile(file);
+        return paths[file];
+    }
+
+    public ConflictType getType(int file) {
+        checkFile(file);
+        return ConflictType.fromByte(types[file]);
+    }
+
+    /**
+     * @return number of conflict chunks in the file
+     */
+    public int getChunks(int file) {
+        return endChunk(file) - firstChunks[file];
+    }
+
+    /**
+     * @return number of conflicting lines of both parents in the file
+     */
+    public int getLines(int file) {
+        return countLines(firstChunks[file], endChunk(file));
+    }
+
+    /**
+     * @param file  index of the file
+     * @param chunk index of the chunk within the file
+     * @return first conflicting line of the first parent
+     */
+    public int getBegin1(int file, int chunk) {
+        return lines[offset(file, chunk)];
+    }
+
+    public int getEnd1(int file, int chunk) {
+        return lines[offset(file, chunk) + 1];
+    }
+
+    public int getBegin2(int file, int chunk) {
+        return lines[offset(file, chunk) + 2];
+    }
+
+    public int getEnd2(int file, int chunk) {
+        return lines[offset(file, chunk) + 3];
+    }
+
+    private int endChunk(int file) {
+        checkFile(file);
+        return file + 1 < files ? firstChunks[file + 1] : chunks;
+    }
+
+    private int countLines(int from, int to) {
+        int count = 0;
+        for (int i = from * FIELDS; i < to * FIELDS; i += 2) {
+            count += lines[i + 1] - lines[i];
+        }
+        return count;
+    }
+
+    private int offset(int file, int chunk) {
+        if (chunk < 0 || chunk >= getChunks(file)) {
+            throw new IndexOutOfBoundsException("Chunk: " + chunk + ", Size: " + getChunks(file));
+        }
+        return (firstChunks[file] + chunk) * FIELDS;
+    }
+
+    private void checkFile(int file) {
+        if (file < 0 || file >= files) {
+            throw new IndexOutOfBoundsException("Index: " + file + ", Size: " + files);
+        }
+    }
+}
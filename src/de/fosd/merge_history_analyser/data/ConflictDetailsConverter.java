@@ -0,0 +1,158 @@
+package de.fosd.merge_history_analyser.data;
+
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.ExtendedHierarchicalStreamWriterHelper;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+import java.util.List;
+
+/**
+ * Writes {@link ConflictDetails} with one element per file and its chunks as a single value.
+ * <p>
+ * The chunks of a file are separated by spaces. A chunk is written like the ranges of a unified diff:
+ * the first line (counted from 1) and the number of lines of the first parent, a slash and the same
+ * for the second parent, e.g. {@code 12,3/12,5}.
+ * With attributes, path, type and counters are attributes of the file elements and the chunks are their text.
+ * Without attributes, all values are elements and the files are wrapped in a files list,
+ * which gives a regular structure in JSON. Both formats are read.
+ *
+ * @author Martin Gruber
+ */
+public class ConflictDetailsConverter implements Converter {
+
+    private final boolean attributes;
+
+    /**
+     * Creates a converter for XML with the counters as attributes.
+     */
+    public ConflictDetailsConverter() {
+        this(true);
+    }
+
+    /**
+     * @param attributes true to write the counters as attributes, false to write them as elements
+     */
+    public ConflictDetailsConverter(boolean attributes) {
+        this.attributes = attributes;
+    }
+
+    @Override
+    public boolean canConvert(Class type) {
+        return type == ConflictDetails.class;
+    }
+
+    @Override
+    public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+        ConflictDetails details = (ConflictDetails) source;
+        if (attributes) {
+            writer.addAttribute("chunks", String.valueOf(details.getChunks()));
+            writer.addAttribute("lines", String.valueOf(details.getLines()));
+            for (int i = 0; i < details.getFiles(); i++) {
+                writer.startNode("file");
+                writer.addAttribute("path", details.getPath(i));
+                writer.addAttribute("type", details.getType(i).getLabel());
+                writer.addAttribute("chunks", String.valueOf(details.getChunks(i)));
+                writer.addAttribute("lines", String.valueOf(details.getLines(i)));
+                writer.setValue(formatChunks(details, i));
+                writer.endNode();
+            }
+        } else {
+            writeValue(writer, "chunks", String.valueOf(details.getChunks()), Integer.class);
+            writeValue(writer, "lines", String.valueOf(details.getLines()), Integer.class);
+            ExtendedHierarchicalStreamWriterHelper.startNode(writer, "files", List.class);
+            for (int i = 0; i < details.getFiles(); i++) {
+                ExtendedHierarchicalStreamWriterHelper.startNode(writer, "file", Object.class);
+                writeValue(writer, "path", details.getPath(i), String.class);
+                writeValue(writer, "type", details.getType(i).getLabel(), String.class);
+                writeValue(writer, "chunks", String.valueOf(details.getChunks(i)), Integer.class);
+                writeValue(writer, "lines", String.valueOf(details.getLines(i)), Integer.class);
+                writeValue(writer, "ranges", formatChunks(details, i), String.class);
+                writer.endNode();
+            }
+            writer.endNode();
+        }
+    }
+
+    private static String formatChunks(ConflictDetails details, int file) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < details.getChunks(file); i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            int begin1 = details.getBegin1(file, i);
+            int begin2 = details.getBegin2(file, i);
+            builder.append(begin1 + 1).append(',').append(details.getEnd1(file, i) - begin1).append('/')
+                    .append(begin2 + 1).append(',').append(details.getEnd2(file, i) - begin2);
+        }
+        return builder.toString();
+    }
+
+    private static void writeValue(HierarchicalStreamWriter writer, String name, String value, Class type) {
+        ExtendedHierarchicalStreamWriterHelper.startNode(writer, name, type);
+        writer.setValue(value);
+        writer.endNode();
+    }
+
+    /**
+     * Reads both formats. The counters are not read, but recomputed from the chunks.
+     */
+    @Override
+    public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+        ConflictDetails details = new ConflictDetails();
+        while (reader.hasMoreChildren()) {
+            reader.moveDown();
+            switch (reader.getNodeName()) {
+                case "files":
+                    while (reader.hasMoreChildren()) {
+                        reader.moveDown();
+                        readFile(details, reader);
+                        reader.moveUp();
+                    }
+                    break;
+                case "file":
+                    readFile(details, reader);
+                    break;
+            }
+            reader.moveUp();
+        }
+        details.trimToSize();
+        return details;
+    }
+
+    private static void readFile(ConflictDetails details, HierarchicalStreamReader reader) {
+        String path = reader.getAttribute("path");
+        String type = reader.getAttribute("type");
+        String ranges = path != null ? reader.getValue() : null;
+        while (reader.hasMoreChildren()) {
+            reader.moveDown();
+            switch (reader.getNodeName()) {
+                case "path":
+                    path = reader.getValue();
+                    break;
+                case "type":
+                    type = reader.getValue();
+                    break;
+                case "ranges":
+                    ranges = reader.getValue();
+                    break;
+            }
+            reader.moveUp();
+        }
+        details.addFile(path, ConflictType.fromLabel(type));
+        if (ranges == null || ranges.isEmpty()) {
+            return;
+        }
+        for (String chunk : ranges.trim().split(" +")) {
+            String[] parents = chunk.split("/");
+            String[] range1 = parents[0].split(",");
+            String[] range2 = parents[1].split(",");
+            int begin1 = Integer.parseInt(range1[0]) - 1;
+            int begin2 = Integer.parseInt(range2[0]) - 1;
+            details.addChunk(begin1, begin1 + Integer.parseInt(range1[1]),
+                    begin2, begin2 + Integer.parseInt(range2[1]));
+        }
+    }
+}
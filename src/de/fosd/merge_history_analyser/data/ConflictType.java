@@ -0,0 +1,57 @@
+package de.fosd.merge_history_analyser.data;
+
+/**
+ * Kind of a conflicting file. Stored as a byte in {@link ConflictDetails}.
+ *
+ * @author Martin Gruber
+ */
+public enum ConflictType {
+    /**
+     * Both parents changed the file
+     */
+    CONTENT("content"),
+    /**
+     * Both parents added the file, which is not in the merge base
+     */
+    ADD_ADD("add/add"),
+    /**
+     * One parent changed the file, the other one deleted it
+     */
+    MODIFY_DELETE("modify/delete");
+
+    private static final ConflictType[] VALUES = values();
+
+    private final String label;
+
+    ConflictType(String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return the name used in results, e.g. add/add
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    byte toByte() {
+        return (byte) ordinal();
+    }
+
+    static ConflictType fromByte(byte code) {
+        return VALUES[code];
+    }
+
+    /**
+     * @param label name used in results, e.g. add/add
+     * @return matching type, CONTENT if the label is unknown
+     */
+    public static ConflictType fromLabel(String label) {
+        for (ConflictType type : VALUES) {
+            if (type.label.equals(label)) {
+                return type;
+            }
+        }
+        return CONTENT;
+    }
+}
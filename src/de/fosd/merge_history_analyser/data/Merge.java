@@ -1,5 +1,6 @@
 package de.fosd.merge_history_analyser.data;
 
+import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 
 import java.util.Set;
@@ -7,16 +8,33 @@ import java.util.Set;
 /**
  * @author Martin Gruber
  */
+@XStreamAlias("merge")
 public class Merge {
 
+    @XStreamAsAttribute
+    private String strategy;
     @XStreamAsAttribute
     private String state;
+    @XStreamAsAttribute
+    private String tree;
     private Set<String> conflicts;
+    private ConflictDetails conflictDetails;
 
     public Merge() {
     }
 
 
+    /**
+     * @return name of the merge strategy, null if no strategy was chosen
+     */
+    public String getStrategy() {
+        return strategy;
+    }
+
+    public void setStrategy(String strategy) {
+        this.strategy = strategy;
+    }
+
     public String getState() {
         return state;
     }
@@ -25,6 +43,17 @@ public class Merge {
         this.state = state;
     }
 
+    /**
+     * @return ID of the merged tree, null if the merge did not succeed
+     */
+    public String getTree() {
+        return tree;
+    }
+
+    public void setTree(String tree) {
+        this.tree = tree;
+    }
+
     public Set<String> getConflicts() {
         return conflicts;
     }
@@ -32,4 +61,15 @@ public class Merge {
     public void setConflicts(Set<String> conflicts) {
         this.conflicts = conflicts;
     }
+
+    /**
+     * @return conflict chunks of the conflicting files, null if the merge did not conflict
+     */
+    public ConflictDetails getConflictDetails() {
+        return conflictDetails;
+    }
+
+    public void setConflictDetails(ConflictDetails conflictDetails) {
+        this.conflictDetails = conflictDetails;
+    }
 }
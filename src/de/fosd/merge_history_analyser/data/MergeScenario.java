@@ -2,6 +2,8 @@ package de.fosd.merge_history_analyser.data;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 
+import java.util.List;
+
 /**
  * @author Martin Gruber
  */
@@ -21,6 +23,13 @@ public class MergeScenario {
 
     private AnalysedCommit pushed;
 
+    private AnalysedCommit base;
+
+    /**
+     * Merges with the other strategies compared, null if only one strategy is used
+     */
+    private List<Merge> strategyMerges;
+
     public MergeScenario(String commitID, String parent1ID, String parent2ID) {
         this.commitID = commitID;
         this.parent1 = new AnalysedCommit(parent1ID);
@@ -30,6 +39,10 @@ public class MergeScenario {
         build = new Build();
     }
 
+    public String getCommitID() {
+        return commitID;
+    }
+
     public Merge getMerge() {
         return merge;
     }
@@ -78,4 +91,20 @@ public class MergeScenario {
     public void setPushed(AnalysedCommit pushed) {
         this.pushed = pushed;
     }
+
+    public AnalysedCommit getBase() {
+        return base;
+    }
+
+    public void setBase(AnalysedCommit base) {
+        this.base = base;
+    }
+
+    public List<Merge> getStrategyMerges() {
+        return strategyMerges;
+    }
+
+    public void setStrategyMerges(List<Merge> strategyMerges) {
+        this.strategyMerges = strategyMerges;
+    }
 }
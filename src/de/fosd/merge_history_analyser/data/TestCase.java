@@ -16,4 +16,16 @@ public class TestCase {
         this.result = result;
         this.duration = duration;
     }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public String getDuration() {
+        return duration;
+    }
 }
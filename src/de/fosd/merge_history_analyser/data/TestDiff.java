@@ -0,0 +1,196 @@
+package de.fosd.merge_history_analyser.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares the test results of the remerge with the results of both parents and of the pushed merge commit.
+ * <p>
+ * The results of each commit are joined on the ids of the test names with a hash index,
+ * so every test is looked up in constant time. Only tests which changed are kept:
+ * <ul>
+ * <li>ADDED: run on the remerge, but on none of the parents</li>
+ * <li>PUSHED_DIFFERS: passed on the remerge and failed on the pushed commit or vice versa, whose tree differs from the
+ * remerge, e.g. because of manual changes. Commits with the same tree share their results, so the results of equal
+ * trees never differ.</li>
+ * <li>NEWLY_FAILING: failed on the remerge, but on none of the parents</li>
+ * <li>FIXED: passed on the remerge, but failed on at least one of the parents</li>
+ * </ul>
+ *
+ * @author Martin Gruber
+ */
+public class TestDiff {
+
+    public enum Change {
+        ADDED, PUSHED_DIFFERS, NEWLY_FAILING, FIXED
+    }
+
+    /**
+     * A changed test with its results, a result is null if the test was not run on that commit.
+     */
+    public static class Entry {
+        private final int nameId;
+        private final Change change;
+        private final TestResult remerge;
+        private final TestResult parent1;
+        private final TestResult parent2;
+        private final TestResult pushed;
+
+        Entry(int nameId, Change change, TestResult remerge, TestResult parent1, TestResult parent2, TestResult pushed) {
+            this.nameId = nameId;
+            this.change = change;
+            this.remerge = remerge;
+            this.parent1 = parent1;
+            this.parent2 = parent2;
+            this.pushed = pushed;
+        }
+
+        public String getName() {
+            return TestNames.name(nameId);
+        }
+
+        public Change getChange() {
+            return change;
+        }
+
+        public TestResult getRemerge() {
+            return remerge;
+        }
+
+        public TestResult getParent1() {
+            return parent1;
+        }
+
+        public TestResult getParent2() {
+            return parent2;
+        }
+
+        public TestResult getPushed() {
+            return pushed;
+        }
+    }
+
+    private final String commitID;
+
+    private final List<Entry> entries;
+
+    private TestDiff(String commitID, List<Entry> entries) {
+        this.commitID = commitID;
+        this.entries = entries;
+    }
+
+    public String getCommitID() {
+        return commitID;
+    }
+
+    /**
+     * @return changed tests in the order they were run on the remerge
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Compares the test results of a merge scenario.
+     *
+     * @param mergeScenario analysed merge scenario
+     * @return changed tests, empty if no tests were run on the remerge
+     */
+    public static TestDiff compute(MergeScenario mergeScenario) {
+        Tests remerge = mergeScenario.getTests();
+        if (remerge == null || remerge.getTotal() == 0) {
+            return new TestDiff(mergeScenario.getCommitID(), Collections.<Entry>emptyList());
+        }
+        ResultIndex parent1 = ResultIndex.of(mergeScenario.getParent1());
+        ResultIndex parent2 = ResultIndex.of(mergeScenario.getParent2());
+        ResultIndex pushed = ResultIndex.of(mergeScenario.getPushed());
+        String remergeTree = mergeScenario.getMerge() != null ? mergeScenario.getMerge().getTree() : null;
+        String pushedTree = mergeScenario.getPushed() != null ? mergeScenario.getPushed().getTree() : null;
+        //Unknown for results of earlier versions
+        boolean pushedDiffers = remergeTree != null && pushedTree != null && !remergeTree.equals(pushedTree);
+
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < remerge.getTotal(); i++) {
+            int nameId = remerge.getNameId(i);
+            TestResult result = remerge.getResult(i);
+            TestResult result1 = parent1.get(nameId);
+            TestResult result2 = parent2.get(nameId);
+            TestResult resultPushed = pushed.get(nameId);
+
+            Change change = null;
+            if (result1 == null && result2 == null) {
+                change = Change.ADDED;
+            } else if (pushedDiffers && isPassOrFail(result) && isPassOrFail(resultPushed) && result != resultPushed) {
+                change = Change.PUSHED_DIFFERS;
+            } else if (result == TestResult.FAIL && result1 != TestResult.FAIL && result2 != TestResult.FAIL) {
+                change = Change.NEWLY_FAILING;
+            } else if (result == TestResult.PASS && (result1 == TestResult.FAIL || result2 == TestResult.FAIL)) {
+                change = Change.FIXED;
+            }
+            if (change != null) {
+                entries.add(new Entry(nameId, change, result, result1, result2, resultPushed));
+            }
+        }
+        return new TestDiff(mergeScenario.getCommitID(), entries);
+    }
+
+    private static boolean isPassOrFail(TestResult result) {
+        return result == TestResult.PASS || result == TestResult.FAIL;
+    }
+
+    /**
+     * Open addressing hash index from the id of a test name to its result, without boxing.
+     */
+    private static class ResultIndex {
+        private static final ResultIndex EMPTY = new ResultIndex(0);
+
+        private final int[] keys;
+        private final byte[] values;
+        private final int mask;
+
+        private ResultIndex(int size) {
+            int capacity = Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1;
+            keys = new int[capacity];
+            Arrays.fill(keys, -1);
+            values = new byte[capacity];
+            mask = capacity - 1;
+        }
+
+        static ResultIndex of(AnalysedCommit commit) {
+            Tests tests = commit == null ? null : commit.getTests();
+            if (tests == null || tests.getTotal() == 0) {
+                return EMPTY;
+            }
+            ResultIndex index = new ResultIndex(tests.getTotal());
+            for (int i = 0; i < tests.getTotal(); i++) {
+                index.put(tests.getNameId(i), tests.getResult(i));
+            }
+            return index;
+        }
+
+        private void put(int key, TestResult result) {
+            int slot = slot(key);
+            keys[slot] = key;
+            values[slot] = result.toByte();
+        }
+
+        TestResult get(int key) {
+            int slot = slot(key);
+            return keys[slot] == key ? TestResult.fromByte(values[slot]) : null;
+        }
+
+        /**
+         * @return slot of the key or the first free slot
+         */
+        private int slot(int key) {
+            int hash = key * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (keys[slot] != -1 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
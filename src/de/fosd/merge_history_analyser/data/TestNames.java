@@ -0,0 +1,65 @@
+package de.fosd.merge_history_analyser.data;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Dictionary of all test names seen in this run.
+ * <p>
+ * The same tests are run for every analysed commit, so {@link Tests} only stores the id of each name.
+ * Ids are only valid within one run and must not be persisted.
+ *
+ * @author Martin Gruber
+ */
+public final class TestNames {
+
+    private static final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private static String[] names = new String[1024];
+
+    private static int count;
+
+    private TestNames() {
+    }
+
+    /**
+     * Returns the id of a test name and adds the name if it is not known yet.
+     *
+     * @param name full name of the test
+     * @return id of the name
+     */
+    public static int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (TestNames.class) {
+            id = ids.get(name);
+            if (id == null) {
+                if (count == names.length) {
+                    names = Arrays.copyOf(names, names.length * 2);
+                }
+                names[count] = name;
+                id = count++;
+                ids.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @param id id returned by {@link #intern(String)}
+     * @return full name of the test
+     */
+    public static synchronized String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return number of distinct test names
+     */
+    public static synchronized int size() {
+        return count;
+    }
+}
@@ -0,0 +1,55 @@
+package de.fosd.merge_history_analyser.data;
+
+/**
+ * Outcome of a single test case. Stored as a byte in {@link Tests}.
+ *
+ * @author Martin Gruber
+ */
+public enum TestResult {
+    PASS("pass"),
+    FAIL("fail"),
+    SKIP("skip"),
+    /**
+     * Not run, because the test is not affected by the changes and has the same result as on a parent
+     */
+    INHERITED("inherited"),
+    UNKNOWN("unknown");
+
+    private static final TestResult[] VALUES = values();
+
+    private final String label;
+
+    TestResult(String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return the name used in results and reports, e.g. pass
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    byte toByte() {
+        return (byte) ordinal();
+    }
+
+    static TestResult fromByte(byte code) {
+        return VALUES[code];
+    }
+
+    /**
+     * @param label name used in results and reports, e.g. pass
+     * @return matching result or UNKNOWN
+     */
+    public static TestResult fromLabel(String label) {
+        if (label != null) {
+            for (TestResult result : VALUES) {
+                if (result.label.equals(label)) {
+                    return result;
+                }
+            }
+        }
+        return UNKNOWN;
+    }
+}
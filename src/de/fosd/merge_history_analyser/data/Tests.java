@@ -1,51 +1,177 @@
 package de.fosd.merge_history_analyser.data;
 
-import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
-import com.thoughtworks.xstream.annotations.XStreamImplicit;
+import com.thoughtworks.xstream.annotations.XStreamConverter;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Created by martin on 09.05.16.
+ * <p>
+ * Test cases are stored column by column in primitive arrays: the id of the name in {@link TestNames},
+ * the {@link TestResult} as byte and the duration as float. Serialized by {@link TestsConverter}.
  */
+@XStreamConverter(TestsConverter.class)
 public class Tests {
-    @XStreamAsAttribute
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String state;
+
     private int total;
 
-    @XStreamAsAttribute
     private int failures;
 
-    @XStreamAsAttribute
     private int passed;
 
-    @XStreamAsAttribute
     private int skipped;
 
-    @XStreamImplicit
-    private List<TestCase> testCases;
+    private int inherited;
+
+    private int[] names;
+
+    private byte[] results;
+
+    private float[] durations;
 
     public Tests() {
-        testCases = new LinkedList<>();
+        names = new int[0];
+        results = new byte[0];
+        durations = new float[0];
         total = 0;
         failures = 0;
         passed = 0;
         skipped = 0;
     }
 
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * Sets the state of the test run if it did not finish regularly, e.g. TIMEOUT.
+     *
+     * @param state state of the test run, null if all tests were run
+     */
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    public int getPassed() {
+        return passed;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return number of test cases which were not run, because they have the same result as on a parent
+     */
+    public int getInherited() {
+        return inherited;
+    }
+
+    /**
+     * @param name     full name of the test case
+     * @param result   pass, fail, skip or inherited
+     * @param duration runtime in seconds, null or empty if unknown
+     */
     public void addTestCase(String name, String result, String duration) {
-        testCases.add(new TestCase(name, result, duration));
+        addTestCase(TestNames.intern(name), TestResult.fromLabel(result), parseDuration(duration));
+    }
+
+    /**
+     * @param nameId   id of the name in {@link TestNames}
+     * @param result   result of the test case
+     * @param duration runtime in seconds, NaN if unknown
+     */
+    public void addTestCase(int nameId, TestResult result, float duration) {
+        if (total == names.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, total + (total >> 1));
+            names = Arrays.copyOf(names, capacity);
+            results = Arrays.copyOf(results, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+        }
+        names[total] = nameId;
+        results[total] = result.toByte();
+        durations[total] = duration;
         switch (result) {
-            case "fail":
+            case FAIL:
                 failures++;
                 break;
-            case "pass":
+            case PASS:
                 passed++;
                 break;
-            case "skip":
+            case SKIP:
                 skipped++;
                 break;
+            case INHERITED:
+                inherited++;
+                break;
         }
         total++;
     }
+
+    /**
+     * Releases the unused capacity of the arrays once all test cases are added.
+     */
+    public void trimToSize() {
+        if (total < names.length) {
+            names = Arrays.copyOf(names, total);
+            results = Arrays.copyOf(results, total);
+            durations = Arrays.copyOf(durations, total);
+        }
+    }
+
+    public int getNameId(int index) {
+        checkIndex(index);
+        return names[index];
+    }
+
+    public String getName(int index) {
+        return TestNames.name(getNameId(index));
+    }
+
+    public TestResult getResult(int index) {
+        checkIndex(index);
+        return TestResult.fromByte(results[index]);
+    }
+
+    /**
+     * @return runtime in seconds, NaN if unknown
+     */
+    public float getDuration(int index) {
+        checkIndex(index);
+        return durations[index];
+    }
+
+    public TestCase getTestCase(int index) {
+        float duration = getDuration(index);
+        return new TestCase(getName(index), getResult(index).getLabel(),
+                Float.isNaN(duration) ? null : Float.toString(duration));
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= total) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + total);
+        }
+    }
+
+    private static float parseDuration(String duration) {
+        if (duration == null || duration.isEmpty()) {
+            return Float.NaN;
+        }
+        try {
+            return Float.parseFloat(duration.replace(",", ""));
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
 }
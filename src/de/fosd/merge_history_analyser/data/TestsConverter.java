@@ -0,0 +1,147 @@
+package de.fosd.merge_history_analyser.data;
+
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.ExtendedHierarchicalStreamWriterHelper;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+import java.util.List;
+
+/**
+ * Writes {@link Tests} by name instead of the ids of {@link TestNames}, which are only valid within one run.
+ * <p>
+ * With attributes, the format is the same as before the test cases were stored in arrays:
+ * the counters are attributes and every test case is a TestCase element with name, result and duration.
+ * Without attributes, the counters are elements and the test cases are wrapped in a testCases list,
+ * which gives a regular structure in JSON. Both formats are read.
+ *
+ * @author Martin Gruber
+ */
+public class TestsConverter implements Converter {
+
+    private final boolean attributes;
+
+    /**
+     * Creates a converter for XML with the counters as attributes.
+     */
+    public TestsConverter() {
+        this(true);
+    }
+
+    /**
+     * @param attributes true to write the counters as attributes, false to write them as elements
+     */
+    public TestsConverter(boolean attributes) {
+        this.attributes = attributes;
+    }
+
+    @Override
+    public boolean canConvert(Class type) {
+        return type == Tests.class;
+    }
+
+    @Override
+    public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+        Tests tests = (Tests) source;
+        if (attributes) {
+            if (tests.getState() != null) {
+                writer.addAttribute("state", tests.getState());
+            }
+            writer.addAttribute("total", String.valueOf(tests.getTotal()));
+            writer.addAttribute("failures", String.valueOf(tests.getFailures()));
+            writer.addAttribute("passed", String.valueOf(tests.getPassed()));
+            writer.addAttribute("skipped", String.valueOf(tests.getSkipped()));
+            if (tests.getInherited() > 0) {
+                writer.addAttribute("inherited", String.valueOf(tests.getInherited()));
+            }
+            writeTestCases(tests, writer);
+        } else {
+            if (tests.getState() != null) {
+                writeValue(writer, "state", tests.getState(), String.class);
+            }
+            writeValue(writer, "total", String.valueOf(tests.getTotal()), Integer.class);
+            writeValue(writer, "failures", String.valueOf(tests.getFailures()), Integer.class);
+            writeValue(writer, "passed", String.valueOf(tests.getPassed()), Integer.class);
+            writeValue(writer, "skipped", String.valueOf(tests.getSkipped()), Integer.class);
+            if (tests.getInherited() > 0) {
+                writeValue(writer, "inherited", String.valueOf(tests.getInherited()), Integer.class);
+            }
+            ExtendedHierarchicalStreamWriterHelper.startNode(writer, "testCases", List.class);
+            writeTestCases(tests, writer);
+            writer.endNode();
+        }
+    }
+
+    private static void writeTestCases(Tests tests, HierarchicalStreamWriter writer) {
+        for (int i = 0; i < tests.getTotal(); i++) {
+            ExtendedHierarchicalStreamWriterHelper.startNode(writer, "TestCase", TestCase.class);
+            writeValue(writer, "name", tests.getName(i), String.class);
+            writeValue(writer, "result", tests.getResult(i).getLabel(), String.class);
+            float duration = tests.getDuration(i);
+            if (!Float.isNaN(duration)) {
+                writeValue(writer, "duration", Float.toString(duration), String.class);
+            }
+            writer.endNode();
+        }
+    }
+
+    private static void writeValue(HierarchicalStreamWriter writer, String name, String value, Class type) {
+        ExtendedHierarchicalStreamWriterHelper.startNode(writer, name, type);
+        writer.setValue(value);
+        writer.endNode();
+    }
+
+    /**
+     * Reads both formats. The counters are not read, but recomputed from the test cases.
+     */
+    @Override
+    public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+        Tests tests = new Tests();
+        tests.setState(reader.getAttribute("state"));
+        while (reader.hasMoreChildren()) {
+            reader.moveDown();
+            switch (reader.getNodeName()) {
+                case "state":
+                    tests.setState(reader.getValue());
+                    break;
+                case "testCases":
+                    while (reader.hasMoreChildren()) {
+                        reader.moveDown();
+                        readTestCase(tests, reader);
+                        reader.moveUp();
+                    }
+                    break;
+                case "TestCase":
+                    readTestCase(tests, reader);
+                    break;
+            }
+            reader.moveUp();
+        }
+        tests.trimToSize();
+        return tests;
+    }
+
+    private static void readTestCase(Tests tests, HierarchicalStreamReader reader) {
+        String name = null;
+        String result = null;
+        String duration = null;
+        while (reader.hasMoreChildren()) {
+            reader.moveDown();
+            switch (reader.getNodeName()) {
+                case "name":
+                    name = reader.getValue();
+                    break;
+                case "result":
+                    result = reader.getValue();
+                    break;
+                case "duration":
+                    duration = reader.getValue();
+                    break;
+            }
+            reader.moveUp();
+        }
+        tests.addTestCase(name, result, duration);
+    }
+}
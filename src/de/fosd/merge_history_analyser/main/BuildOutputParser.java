@@ -0,0 +1,63 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.data.Build;
+
+import java.util.function.Consumer;
+
+/**
+ * Detects the state and runtime of a build while the output of the build-script is read line by line.
+ *
+ * @author Martin Gruber
+ */
+class BuildOutputParser implements Consumer<String> {
+
+    private volatile boolean noBuildPossible;
+
+    private volatile boolean successful;
+
+    private volatile boolean failed;
+
+    private volatile String runtime;
+
+    @Override
+    public void accept(String line) {
+        //TODO generalize
+        if (line.contains("NO BUILD POSSIBLE")) {
+            noBuildPossible = true;
+        }
+        if (line.contains("BUILD SUCCESSFUL")) {
+            successful = true;
+        }
+        if (line.contains("BUILD FAILED")) {
+            failed = true;
+        }
+        int time = line.lastIndexOf("Total time: ");
+        if (time >= 0) {
+            runtime = line.substring(time + 12);
+        }
+    }
+
+    /**
+     * Returns the analysis of the output read so far.
+     *
+     * @return state (success/fail) and runtime of the build
+     */
+    Build getBuild() {
+        Build build = new Build();
+        build.setState("UNKNOWN");
+        if (noBuildPossible) {
+            build.setState("NO BUILD POSSIBLE");
+        } else {
+            if (successful) {
+                build.setState("SUCCESSFUL");
+            }
+            if (failed) {
+                build.setState("FAILED");
+            }
+        }
+        if (runtime != null) {
+            build.setRuntime(Double.parseDouble(runtime.split(" ")[0]));
+        }
+        return build;
+    }
+}
@@ -0,0 +1,317 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.data.MergeScenario;
+import de.fosd.merge_history_analyser.util.Logger;
+import de.fosd.merge_history_analyser.util.Metrics;
+import de.fosd.merge_history_analyser.util.RecordCodec;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Hands out merge scenarios to {@link RemoteWorker}s in other processes and collects their results.
+ * <p>
+ * Workers connect to a local TCP port and talk a line based protocol:
+ * <ul>
+ * <li>worker: {@code NEXT}, coordinator: {@code JOB <commitID>}, {@code WAIT <milliseconds>} or {@code DONE}</li>
+ * <li>worker: {@code RESULT <commitID> TAB <record>}, the merge scenario written by a {@link RecordCodec}</li>
+ * <li>worker: {@code FAILED <commitID>}, the job is handed out again up to {@link #MAX_ATTEMPTS} times</li>
+ * </ul>
+ * Jobs of a worker which disconnects are handed out again. If no job is left, an idle worker steals a job which is
+ * still running on another worker, so a slow or hanging worker does not delay the end of the analysis.
+ * The first result of a job is used, later results are discarded.
+ *
+ * @author Martin Gruber
+ */
+class Coordinator implements Closeable {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final long WAIT_MILLIS = 1000;
+
+    private final int port;
+
+    private final RecordCodec codec = new RecordCodec();
+
+    private ServerSocket serverSocket;
+
+    //The following state is guarded by this
+
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    private final Deque<String> pending = new ArrayDeque<>();
+
+    /**
+     * Commit ID -> connections the job is running on, in the order the jobs were started
+     */
+    private final Map<String, Set<Socket>> running = new LinkedHashMap<>();
+
+    private final Map<String, Integer> attempts = new HashMap<>();
+
+    /**
+     * Connection -> start of its current job, for the utilisation of the workers
+     */
+    private final Map<Socket, Long> jobStarts = new HashMap<>();
+
+    private int connected;
+
+    private MergeScenario[] results;
+
+    private boolean[] finished;
+
+    private boolean done;
+
+    /**
+     * @param port local port workers connect to
+     */
+    Coordinator(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Distributes the given merges to the connected workers and waits until all are analysed.
+     *
+     * @param mergeCommits merges to analyse
+     * @param resultHandler receives the analysed merge scenarios in the order of {@param mergeCommits}, a placeholder
+     *                      for a merge which failed on every attempt
+     * @throws IOException if the port can not be opened
+     */
+    void run(List<RevCommit> mergeCommits, Consumer<MergeScenario> resultHandler) throws IOException {
+        synchronized (this) {
+            results = new MergeScenario[mergeCommits.size()];
+            finished = new boolean[mergeCommits.size()];
+            for (RevCommit commit : mergeCommits) {
+                positions.put(commit.getName(), positions.size());
+                pending.add(commit.getName());
+            }
+            done = mergeCommits.isEmpty();
+        }
+        Metrics.gauge("queue.depth", () -> {
+            synchronized (this) {
+                return pending.size();
+            }
+        });
+        Metrics.gauge("workers.size", () -> {
+            synchronized (this) {
+                return connected;
+            }
+        });
+        Metrics.gauge("workers.busy", () -> {
+            synchronized (this) {
+                return jobStarts.size();
+            }
+        });
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Logger.log("Waiting for workers on port " + port);
+        Thread acceptor = new Thread(this::accept, "coordinator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        try {
+            for (int i = 0; i < mergeCommits.size(); i++) {
+                MergeScenario mergeScenario;
+                synchronized (this) {
+                    while (!finished[i]) {
+                        wait();
+                    }
+                    mergeScenario = results[i];
+                    //Release the finished merge scenario
+                    results[i] = null;
+                }
+                if (mergeScenario != null) {
+                    Logger.log("Finished " + (i + 1) + "/" + mergeCommits.size() + " " + mergeScenario.getCommitID());
+                    resultHandler.accept(mergeScenario);
+                } else {
+                    //Failed on every attempt
+                    resultHandler.accept(Project.failedScenario(mergeCommits.get(i)));
+                }
+            }
+        } catch (InterruptedException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                done = true;
+            }
+        }
+    }
+
+    private void accept() {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                Thread handler = new Thread(() -> handle(socket), "coordinator-" + socket.getPort());
+                handler.setDaemon(true);
+                handler.start();
+            }
+        } catch (SocketException e) {
+            //Closed
+        } catch (IOException e) {
+            Logger.log(Logger.Level.ERROR, e.getMessage());
+        }
+    }
+
+    private void handle(Socket socket) {
+        String worker = socket.getRemoteSocketAddress().toString();
+        Logger.log("Worker " + worker + " connected");
+        synchronized (this) {
+            connected++;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.equals("NEXT")) {
+                    writer.write(nextJob(socket, worker));
+                    writer.write('\n');
+                    writer.flush();
+                } else if (line.startsWith("RESULT ")) {
+                    int tab = line.indexOf('\t');
+                    if (tab < 0) {
+                        Logger.log(Logger.Level.WARN, "Malformed result from worker " + worker);
+                        fail(socket, line.substring("RESULT ".length()));
+                    } else {
+                        finish(socket, line.substring("RESULT ".length(), tab), line.substring(tab + 1));
+                    }
+                } else if (line.startsWith("FAILED ")) {
+                    fail(socket, line.substring("FAILED ".length()));
+                }
+            }
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, "Lost worker " + worker + ": " + e.getMessage());
+        } finally {
+            disconnect(socket, worker);
+        }
+    }
+
+    private synchronized String nextJob(Socket socket, String worker) {
+        if (done) {
+            return "DONE";
+        }
+        String commitID = pending.poll();
+        if (commitID == null) {
+            //Steal the oldest job which is running on a single worker only
+            for (Map.Entry<String, Set<Socket>> job : running.entrySet()) {
+                if (job.getValue().size() == 1 && !job.getValue().contains(socket)) {
+                    commitID = job.getKey();
+                    Logger.log("Worker " + worker + " steals " + commitID);
+                    break;
+                }
+            }
+        }
+        if (commitID == null) {
+            return "WAIT " + WAIT_MILLIS;
+        }
+        running.computeIfAbsent(commitID, key -> new HashSet<>()).add(socket);
+        jobStarts.put(socket, System.nanoTime());
+        Logger.log("Working on " + (positions.get(commitID) + 1) + "/" + results.length + " " + commitID
+                + " in " + worker);
+        return "JOB " + commitID;
+    }
+
+    private void finish(Socket socket, String commitID, String record) {
+        MergeScenario mergeScenario;
+        try {
+            mergeScenario = (MergeScenario) codec.decode(record);
+        } catch (RuntimeException e) {
+            Logger.log(Logger.Level.WARN, "Could not read result of " + commitID + ": " + e.getMessage());
+            fail(socket, commitID);
+            return;
+        }
+        synchronized (this) {
+            endJob(socket);
+            Integer position = positions.get(commitID);
+            running.remove(commitID);
+            if (position == null || finished[position]) {
+                return;
+            }
+            results[position] = mergeScenario;
+            finished[position] = true;
+            notifyAll();
+        }
+    }
+
+    private synchronized void fail(Socket socket, String commitID) {
+        endJob(socket);
+        Integer position = positions.get(commitID);
+        Set<Socket> workers = running.get(commitID);
+        if (position == null || finished[position] || workers == null || !workers.remove(socket)) {
+            return;
+        }
+        if (!workers.isEmpty()) {
+            //Still running on another worker
+            return;
+        }
+        running.remove(commitID);
+        int attempt = attempts.merge(commitID, 1, Integer::sum);
+        if (attempt < MAX_ATTEMPTS) {
+            Logger.log(Logger.Level.WARN, "Job " + commitID + " failed, hand out again");
+            pending.addFirst(commitID);
+        } else {
+            Logger.log(Logger.Level.ERROR, "Job " + commitID + " failed " + attempt + " times, give up");
+            finished[position] = true;
+            notifyAll();
+        }
+    }
+
+    private void disconnect(Socket socket, String worker) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+        }
+        synchronized (this) {
+            endJob(socket);
+            connected--;
+            for (Map.Entry<String, Set<Socket>> job : new ArrayList<>(running.entrySet())) {
+                if (job.getValue().remove(socket) && job.getValue().isEmpty()) {
+                    Logger.log("Worker " + worker + " disconnected, hand out " + job.getKey() + " again");
+                    running.remove(job.getKey());
+                    pending.addFirst(job.getKey());
+                }
+            }
+        }
+        Logger.log("Worker " + worker + " disconnected");
+    }
+
+    private void endJob(Socket socket) {
+        Long start = jobStarts.remove(socket);
+        if (start != null) {
+            Metrics.busy("workers", start);
+        }
+    }
+
+    /**
+     * Stops accepting workers. Connected workers get DONE on their next request.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            done = true;
+        }
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.data.Build;
+import de.fosd.merge_history_analyser.data.Tests;
+import de.fosd.merge_history_analyser.util.Logger;
+import org.gradle.tooling.BuildCancelledException;
+import org.gradle.tooling.BuildException;
+import org.gradle.tooling.BuildLauncher;
+import org.gradle.tooling.CancellationTokenSource;
+import org.gradle.tooling.GradleConnectionException;
+import org.gradle.tooling.GradleConnector;
+import org.gradle.tooling.ProjectConnection;
+import org.gradle.tooling.events.OperationType;
+import org.gradle.tooling.events.ProgressListener;
+import org.gradle.tooling.events.test.JvmTestOperationDescriptor;
+import org.gradle.tooling.events.test.TestFailureResult;
+import org.gradle.tooling.events.test.TestFinishEvent;
+import org.gradle.tooling.events.test.TestOperationResult;
+import org.gradle.tooling.events.test.TestSkippedResult;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds and tests a Gradle project through the Gradle Tooling API instead of build- and test-scripts.
+ * <p>
+ * The connection to the project is kept open for the whole run, so the Gradle daemon stays warm between commits.
+ * No clean task is run, so Gradle can compile incrementally and reuse the outputs of the previous commit.
+ * Test results are collected from the progress events of the test task, no reports have to be parsed.
+ *
+ * @author Martin Gruber
+ */
+class GradleExecutor implements Closeable {
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gradle-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File projectDir;
+
+    private final String[] buildTasks;
+
+    private final String[] testTasks;
+
+    private final String[] arguments;
+
+    private ProjectConnection connection;
+
+    /**
+     * @param projectDir root directory of the Gradle project, i.e. the working tree
+     * @param buildTasks tasks run to build a commit, e.g. jar
+     * @param testTasks  tasks run to test a commit, e.g. cleanTest test
+     * @param arguments  additional command line arguments, e.g. --build-cache
+     */
+    GradleExecutor(File projectDir, String[] buildTasks, String[] testTasks, String[] arguments) {
+        this.projectDir = projectDir;
+        this.buildTasks = buildTasks;
+        this.testTasks = testTasks;
+        this.arguments = arguments;
+    }
+
+    private synchronized ProjectConnection getConnection() {
+        if (connection == null) {
+            connection = GradleConnector.newConnector().forProjectDirectory(projectDir).connect();
+        }
+        return connection;
+    }
+
+    private boolean isGradleProject() {
+        return new File(projectDir, "build.gradle").isFile() || new File(projectDir, "settings.gradle").isFile();
+    }
+
+    /**
+     * Runs the build tasks in the current working tree.
+     *
+     * @param timeoutSeconds wall-clock time after which the build is cancelled, 0 for no limit
+     * @return analysis of the build: state (success/fail), runtime
+     */
+    Build build(long timeoutSeconds) {
+        Build build = new Build();
+        if (!isGradleProject()) {
+            build.setState("NO BUILD POSSIBLE");
+            return build;
+        }
+        long start = System.nanoTime();
+        build.setState(run(buildTasks, Collections.<String>emptyList(), timeoutSeconds, null));
+        build.setRuntime((System.nanoTime() - start) / 1e9);
+        return build;
+    }
+
+    /**
+     * Runs the test tasks in the current working tree and records every finished test method.
+     *
+     * @param timeoutSeconds wall-clock time after which the tests are cancelled, 0 for no limit
+     * @param testClasses    comma separated test classes to run, null to run all tests
+     * @return analysis of the tests
+     */
+    Tests test(long timeoutSeconds, String testClasses) {
+        Tests tests = new Tests();
+        if (!isGradleProject()) {
+            return tests;
+        }
+        List<String> testArguments = new ArrayList<>();
+        if (testClasses != null) {
+            for (String testClass : testClasses.split(",")) {
+                testArguments.add("--tests");
+                testArguments.add(testClass);
+            }
+        }
+        String state = run(testTasks, testArguments, timeoutSeconds, event -> {
+            if (event instanceof TestFinishEvent && event.getDescriptor() instanceof JvmTestOperationDescriptor) {
+                JvmTestOperationDescriptor descriptor = (JvmTestOperationDescriptor) event.getDescriptor();
+                if (descriptor.getMethodName() != null) {
+                    TestOperationResult result = ((TestFinishEvent) event).getResult();
+                    String duration = String.valueOf((result.getEndTime() - result.getStartTime()) / 1000.0);
+                    synchronized (tests) {
+                        tests.addTestCase(descriptor.getClassName() + "." + descriptor.getMethodName(),
+                                toResult(result), duration);
+                    }
+                }
+            }
+        });
+        if (state.equals("TIMEOUT")) {
+            tests.setState(state);
+        }
+        tests.trimToSize();
+        return tests;
+    }
+
+    private static String toResult(TestOperationResult result) {
+        if (result instanceof TestFailureResult) {
+            return "fail";
+        } else if (result instanceof TestSkippedResult) {
+            return "skip";
+        }
+        return "pass";
+    }
+
+    /**
+     * Runs the given tasks and waits until they are finished.
+     *
+     * @return SUCCESSFUL, FAILED, TIMEOUT or Gradle Exception
+     */
+    private String run(String[] tasks, List<String> taskArguments, long timeoutSeconds, ProgressListener testListener) {
+        CancellationTokenSource cancellation = GradleConnector.newCancellationTokenSource();
+        List<String> allArguments = new ArrayList<>(Arrays.asList(arguments));
+        allArguments.addAll(taskArguments);
+        BuildLauncher launcher = getConnection().newBuild()
+                .forTasks(tasks)
+                .withArguments(allArguments.toArray(new String[allArguments.size()]))
+                .withCancellationToken(cancellation.token());
+        if (testListener != null) {
+            launcher.addProgressListener(testListener, EnumSet.of(OperationType.TEST));
+        }
+        ScheduledFuture<?> timeout = timeoutSeconds > 0
+                ? TIMER.schedule(cancellation::cancel, timeoutSeconds, TimeUnit.SECONDS) : null;
+        try {
+            launcher.run();
+            return "SUCCESSFUL";
+        } catch (BuildCancelledException e) {
+            Logger.log(Logger.Level.WARN, "\t\tGradle cancelled after " + timeoutSeconds + "s");
+            return "TIMEOUT";
+        } catch (BuildException e) {
+            //Also thrown if tests fail
+            return "FAILED";
+        } catch (GradleConnectionException | IllegalStateException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+            return "Gradle Exception";
+        } finally {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (connection != null) {
+            connection.close();
+            connection = null;
+        }
+    }
+}
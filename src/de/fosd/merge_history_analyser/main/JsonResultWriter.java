@@ -0,0 +1,54 @@
+package de.fosd.merge_history_analyser.main;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.json.JsonHierarchicalStreamDriver;
+import com.thoughtworks.xstream.io.json.JsonWriter;
+import de.fosd.merge_history_analyser.data.MergeScenario;
+import de.fosd.merge_history_analyser.data.ConflictDetailsConverter;
+import de.fosd.merge_history_analyser.data.TestsConverter;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes the results as line-delimited JSON, one merge scenario per line.
+ * <p>
+ * The XML aliases are not applied, because JSON objects can not contain the same key twice
+ * (e.g. both parents or all test cases). Fields are named like in the data classes instead.
+ *
+ * @author Martin Gruber
+ */
+class JsonResultWriter implements ResultWriter {
+
+    private static final JsonWriter.Format SINGLE_LINE = new JsonWriter.Format(new char[0], new char[0],
+            JsonWriter.Format.SPACE_AFTER_LABEL | JsonWriter.Format.COMPACT_EMPTY_ELEMENT);
+
+    private final Writer writer;
+
+    private final XStream xstream;
+
+    JsonResultWriter(String filename) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), "utf-8"));
+        xstream = new XStream(new JsonHierarchicalStreamDriver());
+        xstream.setMode(XStream.NO_REFERENCES);
+        xstream.registerConverter(new TestsConverter(false));
+        xstream.registerConverter(new ConflictDetailsConverter(false));
+    }
+
+    @Override
+    public void write(MergeScenario mergeScenario) throws IOException {
+        JsonWriter jsonWriter = new JsonWriter(writer, JsonWriter.DROP_ROOT_MODE, SINGLE_LINE);
+        xstream.marshal(mergeScenario, jsonWriter);
+        jsonWriter.flush();
+        writer.write("\n");
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,155 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.util.Logger;
+import de.fosd.merge_history_analyser.util.Metrics;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Materializes the tree of a commit as a fresh directory without a checkout.
+ * <p>
+ * Every blob is extracted only once into a content-addressed store, a file named after the ID of the blob.
+ * The files of a tree are hardlinks to the store, so materializing a tree only creates directories and links.
+ * Files of the store are read-only, so a build cannot change them for other trees: tools which replace a file
+ * create a new one, tools which write into a tracked file fail. Build files, which build-scripts commonly adapt,
+ * are copied instead. If the store is on another file system than the tree, all files are copied.
+ * <p>
+ * Like a checkout with core.autocrlf=false, the files are written as they are stored, without filters.
+ *
+ * @author Martin Gruber
+ */
+class Materializer {
+
+    /**
+     * Names of files which are copied instead of linked
+     */
+    private static final Set<String> BUILD_FILES = new HashSet<>(Arrays.asList(
+            "build.gradle", "settings.gradle", "gradle.properties", "gradlew", "gradlew.bat",
+            "pom.xml", "build.xml"));
+
+    private final Repository repository;
+
+    private final File store;
+
+    /**
+     * Whether files can be linked, false after a link failed because the store is on another file system
+     */
+    private volatile boolean linking = true;
+
+    /**
+     * @param repository repository the trees are read from
+     * @param store      directory of the blob store, created if it does not exist
+     */
+    Materializer(Repository repository, File store) {
+        this.repository = repository;
+        this.store = store;
+    }
+
+    /**
+     * Replaces the content of a directory with the tree of a commit.
+     *
+     * @param commitID  commit or tree to materialize
+     * @param directory directory, which is created or emptied first
+     * @throws IOException if a file can not be written or an object can not be read
+     */
+    void materialize(ObjectId commitID, File directory) throws IOException {
+        long start = System.nanoTime();
+        if (directory.isDirectory()) {
+            FileUtils.cleanDirectory(directory);
+        } else {
+            Files.createDirectories(directory.toPath());
+        }
+        try (ObjectReader reader = repository.newObjectReader();
+             RevWalk walk = new RevWalk(reader);
+             TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(walk.parseTree(commitID));
+            treeWalk.setRecursive(false);
+            Path root = directory.toPath();
+            while (treeWalk.next()) {
+                Path path = root.resolve(treeWalk.getPathString());
+                FileMode mode = treeWalk.getFileMode(0);
+                if (treeWalk.isSubtree()) {
+                    Files.createDirectory(path);
+                    treeWalk.enterSubtree();
+                } else if (mode == FileMode.GITLINK) {
+                    //Submodules are not materialized, like in a checkout without --recursive
+                    Files.createDirectory(path);
+                } else if (mode == FileMode.SYMLINK) {
+                    byte[] target = reader.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).getCachedBytes();
+                    Files.createSymbolicLink(path, root.getFileSystem().getPath(new String(target, StandardCharsets.UTF_8)));
+                } else {
+                    Path blob = blob(reader, treeWalk.getObjectId(0), mode == FileMode.EXECUTABLE_FILE);
+                    link(blob, path, BUILD_FILES.contains(treeWalk.getNameString()));
+                }
+            }
+        }
+        Metrics.record("materialize", start);
+    }
+
+    /**
+     * Returns the file of a blob in the store and extracts the blob first, if it is not stored yet.
+     * Executable files are stored separately, as all links share the permissions.
+     */
+    private Path blob(ObjectReader reader, ObjectId blobID, boolean executable) throws IOException {
+        String name = blobID.getName();
+        Path blob = store.toPath().resolve(name.substring(0, 2)).resolve(name.substring(2) + (executable ? "x" : ""));
+        if (Files.exists(blob)) {
+            return blob;
+        }
+        Files.createDirectories(blob.getParent());
+        //Concurrent extractions of the same blob each write their own temporary file
+        Path temp = Files.createTempFile(blob.getParent(), name.substring(2), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                reader.open(blobID, Constants.OBJ_BLOB).copyTo(out);
+            }
+            File file = temp.toFile();
+            file.setReadable(true, false);
+            file.setExecutable(executable, false);
+            file.setWritable(false, false);
+            Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+            Metrics.increment("blobs.extracted");
+        } catch (FileAlreadyExistsException e) {
+            //Extracted by another thread in the meantime
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return blob;
+    }
+
+    private void link(Path blob, Path path, boolean copy) throws IOException {
+        if (linking && !copy) {
+            try {
+                Files.createLink(path, blob);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                //Other failures, e.g. too many links to one blob, only affect this file
+                if (!Files.getFileStore(blob).equals(Files.getFileStore(path.getParent()))) {
+                    Logger.log(Logger.Level.WARN,
+                            "Copy files, they can not be linked to the blob store: " + e.getMessage());
+                    linking = false;
+                }
+            }
+        }
+        Files.copy(blob, path);
+        path.toFile().setWritable(true, true);
+    }
+}
@@ -0,0 +1,303 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.util.Logger;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.errors.StopWalkException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.AndRevFilter;
+import org.eclipse.jgit.revwalk.filter.AuthorRevFilter;
+import org.eclipse.jgit.revwalk.filter.CommitTimeRevFilter;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Enumerates the merge commits reachable from HEAD in the same order as {@code git log}.
+ * <p>
+ * Merges can be filtered by commit date, author and the paths they touch. The filters are evaluated by a JGit
+ * {@link RevWalk}, so non-matching commits are never materialized in a list. The first request for the list of
+ * merges builds an index from commit ID to position, which is reused for all later lookups.
+ *
+ * @author Martin Gruber
+ */
+class MergeEnumerator implements Iterable<RevCommit> {
+
+    private final Repository repository;
+
+    private Date since;
+
+    private Date until;
+
+    private String author;
+
+    private List<String> paths;
+
+    private List<RevCommit> merges;
+
+    private Map<String, Integer> positions;
+
+    MergeEnumerator(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Only enumerate merges committed at or after the given date.
+     *
+     * @param since earliest commit date, null to disable
+     */
+    void setSince(Date since) {
+        this.since = since;
+        invalidate();
+    }
+
+    /**
+     * Only enumerate merges committed at or before the given date.
+     *
+     * @param until latest commit date, null to disable
+     */
+    void setUntil(Date until) {
+        this.until = until;
+        invalidate();
+    }
+
+    /**
+     * Only enumerate merges whose author name or email contains the given text.
+     *
+     * @param author part of the author, null to disable
+     */
+    void setAuthor(String author) {
+        this.author = author;
+        invalidate();
+    }
+
+    /**
+     * Only enumerate merges which differ from at least one of their parents in one of the given paths.
+     *
+     * @param paths files or directories relative to the repository root, null to disable
+     */
+    void setPaths(List<String> paths) {
+        this.paths = paths;
+        invalidate();
+    }
+
+    private void invalidate() {
+        merges = null;
+        positions = null;
+    }
+
+    private RevFilter createFilter() {
+        List<RevFilter> filters = new ArrayList<>();
+        //Commits with more than one parent
+        filters.add(RevFilter.NO_MERGES.negate());
+        if (since != null && until != null) {
+            filters.add(CommitTimeRevFilter.between(since, until));
+        } else if (since != null) {
+            filters.add(CommitTimeRevFilter.after(since));
+        } else if (until != null) {
+            filters.add(CommitTimeRevFilter.before(until));
+        }
+        if (author != null) {
+            filters.add(AuthorRevFilter.create(author));
+        }
+        if (paths != null && !paths.isEmpty()) {
+            //Evaluated last, because it is the only filter that has to read trees
+            filters.add(new TouchedPathsFilter(PathFilterGroup.createFromStrings(paths)));
+        }
+        return filters.size() == 1 ? filters.get(0) : AndRevFilter.create(filters);
+    }
+
+    private RevWalk createWalk(RevFilter filter) throws IOException {
+        RevWalk walk = new RevWalk(repository);
+        ObjectId head = repository.resolve(Constants.HEAD);
+        if (head != null) {
+            walk.markStart(walk.parseCommit(head));
+        }
+        walk.setRevFilter(filter);
+        return walk;
+    }
+
+    /**
+     * Lazily walks the history and returns the matching merges one after another.
+     */
+    @Override
+    public Iterator<RevCommit> iterator() {
+        final RevWalk walk;
+        try {
+            walk = createWalk(createFilter());
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+            return Collections.emptyIterator();
+        }
+        return new Iterator<RevCommit>() {
+            private RevCommit next = advance();
+
+            private RevCommit advance() {
+                try {
+                    RevCommit commit = walk.next();
+                    if (commit == null) {
+                        walk.close();
+                    }
+                    return commit;
+                } catch (IOException e) {
+                    Logger.log(Logger.Level.WARN, e.getMessage());
+                    walk.close();
+                    return null;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public RevCommit next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                RevCommit current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    /**
+     * Returns all matching merges. The list and the index of positions are only built once.
+     *
+     * @return all matching merges in history order
+     */
+    synchronized List<RevCommit> getMerges() {
+        if (merges == null) {
+            List<RevCommit> list = new ArrayList<>();
+            Map<String, Integer> index = new HashMap<>();
+            for (RevCommit merge : this) {
+                index.put(merge.getName(), list.size());
+                list.add(merge);
+            }
+            merges = Collections.unmodifiableList(list);
+            positions = index;
+        }
+        return merges;
+    }
+
+    /**
+     * Returns the position of a merge in {@link #getMerges()}.
+     *
+     * @param commitID ID of the merge
+     * @return position of the merge or -1 if there is no such merge
+     */
+    synchronized int indexOf(String commitID) {
+        getMerges();
+        Integer position = positions.get(commitID);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Returns all merges from {@param start} to {@param end}.
+     * If both commits are merges, the range is looked up in the index. Otherwise the history is walked.
+     *
+     * @param start skip all commits before, null to start with the newest merge
+     * @param end   skip all commits after, null to end with the oldest merge
+     * @return matching merges within the range in history order
+     */
+    List<RevCommit> range(String start, String end) {
+        List<RevCommit> all = getMerges();
+        int from = start == null ? 0 : indexOf(start);
+        int to = end == null ? all.size() - 1 : indexOf(end);
+        if (from >= 0 && to >= 0) {
+            return from <= to ? all.subList(from, to + 1) : Collections.<RevCommit>emptyList();
+        }
+        return rangeByWalk(start, end);
+    }
+
+    /**
+     * Walks all commits, because at least one end of the range is not a matching merge.
+     */
+    private List<RevCommit> rangeByWalk(String start, String end) {
+        List<RevCommit> result = new LinkedList<>();
+        RevFilter filter = createFilter();
+        boolean addCommits = start == null;
+        try (RevWalk walk = createWalk(RevFilter.ALL)) {
+            for (RevCommit commit : walk) {
+                if (!addCommits) {
+                    if (commit.getName().equals(start)) {
+                        addCommits = true;
+                    } else {
+                        continue;
+                    }
+                }
+                try {
+                    if (filter.include(walk, commit)) {
+                        result.add(commit);
+                    }
+                } catch (StopWalkException e) {
+                    //Older commits can not match the date filter anymore
+                    break;
+                }
+                if (end != null && commit.getName().equals(end)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Includes commits which differ from at least one of their parents in a set of paths.
+     * In contrast to a tree filter on the {@link RevWalk}, the parents of the commits are not rewritten.
+     */
+    private static class TouchedPathsFilter extends RevFilter {
+
+        private final TreeFilter paths;
+
+        TouchedPathsFilter(TreeFilter paths) {
+            this.paths = paths;
+        }
+
+        @Override
+        public boolean include(RevWalk walker, RevCommit commit) throws MissingObjectException,
+                IncorrectObjectTypeException, IOException {
+            try (TreeWalk treeWalk = new TreeWalk(walker.getObjectReader())) {
+                treeWalk.setRecursive(true);
+                treeWalk.setFilter(AndTreeFilter.create(paths, TreeFilter.ANY_DIFF));
+                treeWalk.addTree(commit.getTree());
+                for (RevCommit parent : commit.getParents()) {
+                    walker.parseHeaders(parent);
+                    treeWalk.addTree(parent.getTree());
+                }
+                return treeWalk.next();
+            }
+        }
+
+        @Override
+        public boolean requiresCommitBody() {
+            return false;
+        }
+
+        @Override
+        public RevFilter clone() {
+            return new TouchedPathsFilter(paths.clone());
+        }
+    }
+}
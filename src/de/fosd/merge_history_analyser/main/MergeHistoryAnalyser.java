@@ -1,12 +1,21 @@
 package de.fosd.merge_history_analyser.main;
 
-import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.io.xml.StaxDriver;
+import de.fosd.merge_history_analyser.merge.ExternalMergeStrategy;
+import de.fosd.merge_history_analyser.merge.JGitMergeStrategy;
+import de.fosd.merge_history_analyser.merge.MergeStrategy;
 import de.fosd.merge_history_analyser.util.Logger;
-import de.fosd.merge_history_analyser.util.Util;
+import de.fosd.merge_history_analyser.util.Metrics;
+import de.fosd.merge_history_analyser.util.ResultStore;
 import org.apache.commons.cli.*;
 
 import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Martin Gruber
@@ -22,6 +31,24 @@ public class MergeHistoryAnalyser {
         return null;
     }
 
+    /**
+     * @param strategy       name of a merge strategy of JGit or name=command of an external merge tool
+     * @param timeoutSeconds seconds after which an external merge tool is killed on a file, 0 for no limit
+     * @return the merge strategy
+     */
+    private static MergeStrategy parseMergeStrategy(String strategy, long timeoutSeconds) {
+        int separator = strategy.indexOf('=');
+        if (separator > 0) {
+            return new ExternalMergeStrategy(strategy.substring(0, separator), strategy.substring(separator + 1),
+                    timeoutSeconds);
+        }
+        org.eclipse.jgit.merge.MergeStrategy jgitStrategy = org.eclipse.jgit.merge.MergeStrategy.get(strategy);
+        if (jgitStrategy == null) {
+            throw new IllegalArgumentException("Unknown merge strategy: " + strategy);
+        }
+        return new JGitMergeStrategy(jgitStrategy);
+    }
+
     public static void main(String[] args) {
         CommandLineParser parser = new DefaultParser();
         Options options = new Options();
@@ -51,6 +78,30 @@ public class MergeHistoryAnalyser {
                 .hasArg()
                 .build());
 
+        options.addOption(Option.builder()
+                .longOpt("since")
+                .desc("Skip all merges committed before the given date (yyyy-MM-dd)")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("until")
+                .desc("Skip all merges committed after the given date (yyyy-MM-dd)")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("author")
+                .desc("Only analyse merges whose author name or email contains the given text")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("path")
+                .desc("Only analyse merges which change one of the given files or directories")
+                .hasArgs()
+                .build());
+
         OptionGroup buildGroup = new OptionGroup();
         buildGroup.addOption(Option.builder("bs")
                 .longOpt("build-script")
@@ -85,15 +136,150 @@ public class MergeHistoryAnalyser {
                 .build());
         options.addOptionGroup(testGroup);
 
+        options.addOption(Option.builder()
+                .longOpt("gradle-tooling")
+                .desc("Build and test with the Gradle Tooling API and a warm Gradle daemon instead of scripts")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("gradle-build-tasks")
+                .desc("Tasks run by --gradle-tooling to build a commit. The default is \"jar\"")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("gradle-test-tasks")
+                .desc("Tasks run by --gradle-tooling to test a commit. The default is \"cleanTest test\"")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("gradle-args")
+                .desc("Additional arguments for --gradle-tooling, e.g. \"--build-cache --offline\"")
+                .hasArg()
+                .build());
+
         options.addOption(Option.builder()
                 .longOpt("log-test-message")
-                .desc("Log the gradle test message")
+                .desc("Log the gradle test message, needs --log-level DEBUG")
+                .build());
+
+        options.addOption(Option.builder("w")
+                .longOpt("workers")
+                .desc("Number of merges analysed in parallel, each worker uses its own clone of the repository")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("pipeline")
+                .desc("Check out, build and test different commits at the same time in --workers working trees")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("snapshots")
+                .desc("With --pipeline, build and test each commit in a fresh snapshot linked from a blob store "
+                        + "next to the repository instead of a checkout in a clone")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("build-timeout")
+                .desc("Abort a build after the given number of minutes and record it as TIMEOUT, "
+                        + "an external merge tool is aborted on a file after the same time")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("test-timeout")
+                .desc("Abort a test run after the given number of minutes and record it as TIMEOUT")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("cpu-limit")
+                .desc("Limit the CPU time of every build and test process to the given number of minutes")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("memory-limit")
+                .desc("Limit the virtual memory of every build and test process to the given number of MB")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder("c")
+                .longOpt("cache")
+                .desc("Store every finished merge in the given file and skip merges already stored there")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("output-format")
+                .desc("Format of the results: xml (default) or jsonl (one JSON object per merge)")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("select-tests")
+                .desc("Only run the tests affected by the changes of a merge, all other tests are inherited from "
+                        + "the parents. The given file stores which tests are affected by which files. "
+                        + "The test-script gets the selected test classes as second argument")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("schedule")
+                .desc("Detect the conflicts of all merges first, then analyse the cheapest merges first. "
+                        + "Results are written in this order")
                 .build());
 
-        options.addOption("s", "merge-strategy", true, "Use the given merge strategy");
+        options.addOption(Option.builder()
+                .longOpt("priorities")
+                .desc("Analyse the merges listed in the given file first, one commit ID per line. Implies --schedule")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("coordinator")
+                .desc("Let worker processes started with --worker analyse the merges. "
+                        + "They connect to the given port on localhost")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("worker")
+                .desc("Analyse merges handed out by the coordinator at the given host:port. "
+                        + "The local repository should be a clone of the repository of the coordinator")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder("s")
+                .longOpt("merge-strategy")
+                .desc("Merge with the given strategy: recursive (default), resolve, ours, theirs or name=command "
+                        + "for an external tool run like a git merge driver with %O %A %B %P. If given several times, "
+                        + "the first strategy is built and tested, the merges of all strategies are recorded")
+                .hasArg()
+                .build());
         options.addOption("nv", "non-verbose", false, "Quiet output");
         options.addOption("o", "output", true, "Store results in given file");
         options.addOption("log", true, "Store logging output in given file. The default is log.txt");
+        options.addOption(Option.builder()
+                .longOpt("metrics")
+                .desc("Write timings, counters and gauges every minute and at the end to the given file, "
+                        + "as JSON if it ends with .json, else as CSV")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("metrics-port")
+                .desc("Serve timings, counters and gauges on http://localhost:<port>/metrics")
+                .hasArg()
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("log-level")
+                .desc("Only log messages of the given level or above: DEBUG, INFO (default), WARN or ERROR")
+                .hasArg()
+                .build());
         options.addOption("h", "help", false, "Print this help page");
 
         try {
@@ -106,16 +292,31 @@ public class MergeHistoryAnalyser {
 
                 //Init logging
                 Logger.init((cmd.hasOption("log") ? cmd.getOptionValue("log") : ("log_" + projectName + ".txt")), !cmd.hasOption("nv"));
+                if (cmd.hasOption("log-level")) {
+                    Logger.setLevel(Logger.Level.valueOf(cmd.getOptionValue("log-level").toUpperCase()));
+                }
+                if (cmd.hasOption("metrics")) {
+                    Metrics.exportTo(new File(cmd.getOptionValue("metrics")));
+                }
+                if (cmd.hasOption("metrics-port")) {
+                    try {
+                        Metrics.serve(Integer.parseInt(cmd.getOptionValue("metrics-port")));
+                    } catch (IOException e) {
+                        Logger.log(Logger.Level.WARN, "Could not serve metrics: " + e.getMessage());
+                    }
+                }
 
                 //Check for build script
                 String buildScriptPath = null;
-                if (!cmd.hasOption("nb")) {
+                if (cmd.hasOption("gradle-tooling")) {
+                    Logger.log("Build with Gradle Tooling API");
+                } else if (!cmd.hasOption("nb")) {
                     if (cmd.hasOption("bs")) {
                         File optionB = new File(cmd.getOptionValue("bs"));
                         if (optionB.exists() && optionB.isFile()) {
                             buildScriptPath = optionB.getAbsolutePath();
                         } else {
-                            Logger.log("Specified build-script does not exist");
+                            Logger.log(Logger.Level.ERROR, "Specified build-script does not exist");
                             throw new IllegalArgumentException("Specified build-script does not exist");
                         }
                     } else if (cmd.hasOption("bd")) {
@@ -123,7 +324,7 @@ public class MergeHistoryAnalyser {
                         if (optionB.exists() && optionB.isDirectory()) {
                             buildScriptPath = searchFile(optionB, projectName);
                         } else {
-                            Logger.log("Argument of option -bd has to be a directory");
+                            Logger.log(Logger.Level.ERROR, "Argument of option -bd has to be a directory");
                             throw new IllegalArgumentException("Argument of option -bd has to be a directory");
                         }
                     } else {
@@ -142,13 +343,15 @@ public class MergeHistoryAnalyser {
 
                 //Check for test script
                 String testScriptPath = null;
-                if (!cmd.hasOption("nt")) {
+                if (cmd.hasOption("gradle-tooling")) {
+                    Logger.log("Test with Gradle Tooling API");
+                } else if (!cmd.hasOption("nt")) {
                     if (cmd.hasOption("ts")) {
                         File option = new File(cmd.getOptionValue("ts"));
                         if (option.exists() && option.isFile()) {
                             testScriptPath = option.getAbsolutePath();
                         } else {
-                            Logger.log("Specified test-script does not exist");
+                            Logger.log(Logger.Level.ERROR, "Specified test-script does not exist");
                             throw new IllegalArgumentException("Specified test-script does not exist");
                         }
                     } else if (cmd.hasOption("td")) {
@@ -156,7 +359,7 @@ public class MergeHistoryAnalyser {
                         if (option.exists() && option.isDirectory()) {
                             testScriptPath = searchFile(option, projectName);
                         } else {
-                            Logger.log("Argument of option -td has to be a directory");
+                            Logger.log(Logger.Level.ERROR, "Argument of option -td has to be a directory");
                             throw new IllegalArgumentException("Argument of option -td has to be a directory");
                         }
                     } else {
@@ -187,25 +390,173 @@ public class MergeHistoryAnalyser {
 
                 //START ANALYSE
                 Project project = new Project(localRepoPath, cmd.getOptionValue("r"), buildScriptPath, testScriptPath, cmd.hasOption("log-test-message"));
+                if (cmd.hasOption("gradle-tooling")) {
+                    project.useGradleTooling(
+                            cmd.hasOption("nb") ? null : cmd.getOptionValue("gradle-build-tasks", "jar").trim().split("\\s+"),
+                            cmd.hasOption("nt") ? null : cmd.getOptionValue("gradle-test-tasks", "cleanTest test").trim().split("\\s+"),
+                            cmd.hasOption("gradle-args") ? cmd.getOptionValue("gradle-args").trim().split("\\s+") : new String[0]);
+                }
+                MergeEnumerator mergeEnumerator = project.getMergeEnumerator();
+                try {
+                    SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+                    if (cmd.hasOption("since")) {
+                        mergeEnumerator.setSince(dateFormat.parse(cmd.getOptionValue("since")));
+                    }
+                    if (cmd.hasOption("until")) {
+                        //Include the whole day
+                        Date until = dateFormat.parse(cmd.getOptionValue("until"));
+                        mergeEnumerator.setUntil(new Date(until.getTime() + TimeUnit.DAYS.toMillis(1) - 1));
+                    }
+                } catch (java.text.ParseException e) {
+                    throw new IllegalArgumentException("Dates have to be given as yyyy-MM-dd");
+                }
+                mergeEnumerator.setAuthor(cmd.getOptionValue("author"));
+                if (cmd.hasOption("path")) {
+                    mergeEnumerator.setPaths(Arrays.asList(cmd.getOptionValues("path")));
+                }
+                if (cmd.hasOption("w")) {
+                    project.setWorkers(Integer.parseInt(cmd.getOptionValue("w")));
+                }
+                project.setPipeline(cmd.hasOption("pipeline"));
+                project.setSnapshots(cmd.hasOption("snapshots"));
+                if (cmd.hasOption("build-timeout")) {
+                    project.setBuildTimeout(TimeUnit.MINUTES.toSeconds(Long.parseLong(cmd.getOptionValue("build-timeout"))));
+                }
+                if (cmd.hasOption("test-timeout")) {
+                    project.setTestTimeout(TimeUnit.MINUTES.toSeconds(Long.parseLong(cmd.getOptionValue("test-timeout"))));
+                }
+                if (cmd.hasOption("s")) {
+                    List<MergeStrategy> strategies = new ArrayList<>();
+                    for (String strategy : cmd.getOptionValues("s")) {
+                        strategies.add(parseMergeStrategy(strategy, project.getBuildTimeout()));
+                    }
+                    project.setMergeStrategies(strategies);
+                }
+                if (cmd.hasOption("cpu-limit")) {
+                    project.setCpuLimit(TimeUnit.MINUTES.toSeconds(Long.parseLong(cmd.getOptionValue("cpu-limit"))));
+                }
+                if (cmd.hasOption("memory-limit")) {
+                    project.setMemoryLimit(Long.parseLong(cmd.getOptionValue("memory-limit")) * 1024);
+                }
+                if (cmd.hasOption("select-tests") && project.getTestScript() != null) {
+                    project.setTestSelector(new TestSelector(new File(cmd.getOptionValue("select-tests"))));
+                }
+                if (cmd.hasOption("priorities")) {
+                    try {
+                        project.setScheduler(new MergeScheduler(cmd.getOptionValue("priorities")));
+                    } catch (IOException e) {
+                        Logger.log(Logger.Level.ERROR, "Could not read priorities: " + e.getMessage());
+                        throw new IllegalArgumentException("Could not read priorities " + cmd.getOptionValue("priorities"));
+                    }
+                } else if (cmd.hasOption("schedule")) {
+                    project.setScheduler(new MergeScheduler());
+                }
+                ResultStore resultStore = null;
+                if (cmd.hasOption("c")) {
+                    try {
+                        resultStore = new ResultStore(cmd.getOptionValue("c"));
+                        project.setResultStore(resultStore);
+                    } catch (IOException e) {
+                        Logger.log(Logger.Level.ERROR, "Could not open result store: " + e.getMessage());
+                        throw new IllegalArgumentException("Could not open result store " + cmd.getOptionValue("c"));
+                    }
+                } else {
+                    //Results of trees are reloaded from disk instead of kept in memory, here only during this run
+                    try {
+                        File temporary = File.createTempFile(project.getName(), ".store");
+                        temporary.deleteOnExit();
+                        resultStore = new ResultStore(temporary.getPath());
+                        project.setResultStore(resultStore);
+                    } catch (IOException e) {
+                        Logger.log(Logger.Level.ERROR, "Could not create temporary result store: " + e.getMessage());
+                        throw new IllegalArgumentException("Could not create temporary result store");
+                    }
+                }
+                if (cmd.hasOption("worker")) {
+                    //A worker sends its results to the coordinator
+                    String address = cmd.getOptionValue("worker");
+                    int separator = address.lastIndexOf(':');
+                    try {
+                        new RemoteWorker(project, address.substring(0, separator),
+                                Integer.parseInt(address.substring(separator + 1))).run();
+                    } catch (IOException e) {
+                        Logger.log(Logger.Level.ERROR, "Connection to coordinator failed: " + e.getMessage());
+                    }
+                    project.close();
+                    if (resultStore != null) {
+                        try {
+                            resultStore.close();
+                        } catch (IOException e) {
+                            Logger.log(Logger.Level.WARN, e.getMessage());
+                        }
+                    }
+                    Metrics.close();
+                    Logger.close();
+                    return;
+                }
+                Coordinator coordinator = null;
+                if (cmd.hasOption("coordinator")) {
+                    coordinator = new Coordinator(Integer.parseInt(cmd.getOptionValue("coordinator")));
+                    project.setCoordinator(coordinator);
+                }
+
+                //Results are written as soon as each merge is finished
+                String format = cmd.getOptionValue("output-format", "xml");
+                String output = cmd.hasOption("o") ? cmd.getOptionValue("o") : project.getName() + "." + format;
+                ResultWriter resultWriter;
+                try {
+                    if (format.equals("xml")) {
+                        resultWriter = new XmlResultWriter(output, project);
+                    } else if (format.equals("jsonl")) {
+                        resultWriter = new JsonResultWriter(output);
+                    } else {
+                        throw new IllegalArgumentException("Unknown output format: " + format);
+                    }
+                    if (project.getTestScript() != null) {
+                        //Changed tests are written next to the results
+                        resultWriter = new TestDiffWriter(resultWriter, output + ".diff.csv");
+                    }
+                } catch (IOException e) {
+                    Logger.log(Logger.Level.ERROR, "Could not open output file: " + e.getMessage());
+                    throw new IllegalArgumentException("Could not open output file " + output);
+                }
+                project.setResultWriter(resultWriter);
+
                 String start = cmd.getOptionValue("f");
                 String end = cmd.getOptionValue("t");
-                if (cmd.hasOption("f") || cmd.hasOption("t")) {
+                try {
+                    if (cmd.hasOption("f") || cmd.hasOption("t")) {
+                        try {
+                            //Interpret FROM TO as numbers
+                            project.analyseFromTo(Integer.parseInt(start), Integer.parseInt(end));
+                        } catch (NumberFormatException e) {
+                            //Interpret FROM TO as commitIDs
+                            project.analyseFromTo(cmd.getOptionValue("f"), cmd.getOptionValue("t"));
+                        }
+                    } else {
+                        project.analyse();
+                    }
+                } finally {
                     try {
-                        //Interpret FROM TO as numbers
-                        project.analyseFromTo(Integer.parseInt(start), Integer.parseInt(end));
-                    } catch (NumberFormatException e) {
-                        //Interpret FROM TO as commitIDs
-                        project.analyseFromTo(cmd.getOptionValue("f"), cmd.getOptionValue("t"));
+                        resultWriter.close();
+                        if (coordinator != null) {
+                            coordinator.close();
+                        }
+                    } catch (IOException e) {
+                        Logger.log(Logger.Level.WARN, e.getMessage());
+                    }
+                }
+
+                project.close();
+                if (resultStore != null) {
+                    try {
+                        resultStore.close();
+                    } catch (IOException e) {
+                        Logger.log(Logger.Level.WARN, e.getMessage());
                     }
-                } else {
-                    project.analyse();
                 }
 
-                //Object to XML Conversion
-                XStream xstream = new XStream(new StaxDriver());
-                xstream.processAnnotations(Project.class);
-                String xml = Util.formatXml(xstream.toXML(project));
-                Util.writeFile(cmd.hasOption("o") ? cmd.getOptionValue("o") : project.getName() + ".xml", xml);
+                Metrics.close();
 
                 //Close logger
                 Logger.close();
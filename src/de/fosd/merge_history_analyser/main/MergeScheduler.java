@@ -0,0 +1,167 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.data.Build;
+import de.fosd.merge_history_analyser.data.MergeScenario;
+import de.fosd.merge_history_analyser.util.Logger;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Orders merges so that useful results are available early instead of analysing them in history order.
+ * <p>
+ * First all merges are merged in memory, which is fast and finds the conflicting merges. The merges are kept for
+ * their analysis. Then the merges are ordered by priority and predicted cost, cheapest first. The cost of a merge is
+ * the predicted runtime of all builds it still needs: commits with a stored result cost nothing, the remerge of a
+ * conflicting merge is not built.
+ * Build runtimes are predicted from the runtimes of the parents stored in earlier runs, or else from the mean of all
+ * stored runtimes.
+ *
+ * @author Martin Gruber
+ */
+class MergeScheduler {
+
+    /**
+     * Runtime in seconds assumed for a build if no runtime is known at all
+     */
+    private static final double DEFAULT_RUNTIME = 60;
+
+    /**
+     * Commit ID -> position in the priority file
+     */
+    private final Map<String, Integer> priorities = new HashMap<>();
+
+    MergeScheduler() {
+    }
+
+    /**
+     * Merges listed in the given file are analysed first, in the order of the file.
+     * Every line of the file contains one commit ID, empty lines and lines starting with # are ignored.
+     *
+     * @param priorityFile file listing the merges to analyse first
+     * @throws IOException if the file can not be read
+     */
+    MergeScheduler(String priorityFile) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(priorityFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#") && !priorities.containsKey(line)) {
+                    priorities.put(line, priorities.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges all merges in memory and orders them by priority and predicted cost.
+     * The merged scenarios are kept by the project, so the analysis does not merge again.
+     * Merges with a stored result are not merged and cost nothing.
+     *
+     * @param project      project the merges belong to
+     * @param mergeCommits merges in history order
+     * @return the same merges in the order they should be analysed
+     */
+    List<RevCommit> schedule(Project project, List<RevCommit> mergeCommits) {
+        long start = System.currentTimeMillis();
+        Map<RevCommit, MergeScenario> mergeScenarios = new HashMap<>();
+        int conflicting = 0;
+        for (RevCommit mergeCommit : mergeCommits) {
+            if (!project.hasStoredScenario(mergeCommit)) {
+                MergeScenario mergeScenario = project.premerge(mergeCommit);
+                mergeScenarios.put(mergeCommit, mergeScenario);
+                if ("CONFLICTING".equals(mergeScenario.getMerge().getState())) {
+                    conflicting++;
+                }
+            }
+        }
+
+        Map<RevCommit, Double> costs = new HashMap<>();
+        //Without builds all merges are equally cheap
+        if (!project.isConflictDetectionOnly()) {
+            Map<String, Double> runtimes = new HashMap<>();
+            double sum = 0;
+            for (MergeScenario mergeScenario : mergeScenarios.values()) {
+                for (String commitID : commitsToBuild(mergeScenario)) {
+                    if (!runtimes.containsKey(commitID)) {
+                        Double runtime = storedRuntime(project, commitID);
+                        runtimes.put(commitID, runtime);
+                        sum += runtime == null ? 0 : runtime;
+                    }
+                }
+            }
+            long known = runtimes.values().stream().filter(runtime -> runtime != null).count();
+            double meanRuntime = known > 0 ? sum / known : DEFAULT_RUNTIME;
+
+            Set<String> planned = new HashSet<>();
+            for (RevCommit mergeCommit : mergeCommits) {
+                MergeScenario mergeScenario = mergeScenarios.get(mergeCommit);
+                double cost = 0;
+                if (mergeScenario != null) {
+                    if (!"CONFLICTING".equals(mergeScenario.getMerge().getState())) {
+                        cost = predictRemerge(mergeScenario, runtimes, meanRuntime);
+                    }
+                    for (String commitID : commitsToBuild(mergeScenario)) {
+                        //A commit shared with another merge is only built once
+                        if (runtimes.get(commitID) == null && planned.add(commitID)) {
+                            cost += meanRuntime;
+                        }
+                    }
+                }
+                costs.put(mergeCommit, cost);
+            }
+        }
+        Logger.log("Scheduled " + mergeCommits.size() + " merges, " + conflicting + " conflicting, in "
+                + (System.currentTimeMillis() - start) / 1000 + "s");
+
+        List<RevCommit> scheduled = new ArrayList<>(mergeCommits);
+        scheduled.sort(Comparator
+                .comparingInt((RevCommit commit) -> priorities.getOrDefault(commit.getName(), Integer.MAX_VALUE))
+                .thenComparingDouble(commit -> costs.getOrDefault(commit, 0.0)));
+        return scheduled;
+    }
+
+    /**
+     * @return both parents, the merge itself and the merge base, which are built for every merge scenario
+     */
+    private static List<String> commitsToBuild(MergeScenario mergeScenario) {
+        List<String> commits = new ArrayList<>();
+        commits.add(mergeScenario.getParent1().getCommitID());
+        commits.add(mergeScenario.getParent2().getCommitID());
+        commits.add(mergeScenario.getCommitID());
+        if (mergeScenario.getBase() != null) {
+            commits.add(mergeScenario.getBase().getCommitID());
+        }
+        return commits;
+    }
+
+    /**
+     * The remerge contains the changes of both parents, so it usually takes as long as the slower parent.
+     */
+    private static double predictRemerge(MergeScenario mergeScenario, Map<String, Double> runtimes,
+                                         double meanRuntime) {
+        Double parent1 = runtimes.get(mergeScenario.getParent1().getCommitID());
+        Double parent2 = runtimes.get(mergeScenario.getParent2().getCommitID());
+        if (parent1 == null && parent2 == null) {
+            return meanRuntime;
+        }
+        return Math.max(parent1 == null ? 0 : parent1, parent2 == null ? 0 : parent2);
+    }
+
+    private static Double storedRuntime(Project project, String commitID) {
+        Build stored = project.getStoredBuild(commitID);
+        return stored == null ? null : stored.getRuntime();
+    }
+}
@@ -0,0 +1,430 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.data.AnalysedCommit;
+import de.fosd.merge_history_analyser.data.Build;
+import de.fosd.merge_history_analyser.data.MergeScenario;
+import de.fosd.merge_history_analyser.util.Logger;
+import de.fosd.merge_history_analyser.util.Metrics;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Analyses merge scenarios in stages connected by bounded queues:
+ * <ol>
+ * <li>enumerate: merges every scenario in memory and creates a job for every tree which has to be built,
+ * i.e. the remerge, both parents, the pushed commit and the merge base. A tree needed by several scenarios,
+ * e.g. a remerge identical to the pushed commit, is built only once.</li>
+ * <li>prepare: checks out the tree of a job in an idle working tree</li>
+ * <li>build: runs the build-script</li>
+ * <li>test: runs the test-script, afterwards the working tree is idle again</li>
+ * <li>write: waits for the jobs of each scenario and writes the scenarios in history order</li>
+ * </ol>
+ * Every stage runs on virtual threads, so a stage blocked on git I/O or on a build process costs no platform thread.
+ * With several working trees the next tree is checked out and built while the tests of the current one are running.
+ *
+ * @author Martin Gruber
+ */
+class Pipeline {
+
+    /**
+     * Build and test of one tree
+     */
+    private static class Job {
+        final String treeID;
+
+        /**
+         * Commit to check out, null for a remerge
+         */
+        final String commitID;
+
+        /**
+         * Merge to remerge, null for a commit
+         */
+        final RevCommit mergeCommit;
+
+        final CompletableFuture<AnalysedCommit> result = new CompletableFuture<>();
+
+        Project workingTree;
+
+        AnalysedCommit analysed;
+
+        /**
+         * Number of enumerated scenarios which are not written yet and need this job, guarded by {@link #jobs}
+         */
+        int scenarios;
+
+        long start;
+
+        Job(String treeID, String commitID, RevCommit mergeCommit) {
+            this.treeID = treeID;
+            this.commitID = commitID;
+            this.mergeCommit = mergeCommit;
+        }
+
+        String getName() {
+            return (commitID != null ? commitID : mergeCommit.getName()).substring(0, 7);
+        }
+    }
+
+    /**
+     * A merge scenario waiting for the jobs of its trees, a job is null if the tree is not analysed
+     */
+    private static class Scenario {
+        final RevCommit mergeCommit;
+        MergeScenario mergeScenario;
+        boolean stored;
+        RuntimeException error;
+        Job remerge, parent1, parent2, pushed, base;
+
+        Scenario(RevCommit mergeCommit) {
+            this.mergeCommit = mergeCommit;
+        }
+    }
+
+    private final Project project;
+
+    private final List<Project> workingTrees;
+
+    private final BlockingQueue<Project> idleWorkingTrees = new LinkedBlockingQueue<>();
+
+    private final BlockingQueue<Job> prepareQueue;
+
+    private final BlockingQueue<Job> buildQueue;
+
+    private final BlockingQueue<Job> testQueue;
+
+    private final BlockingQueue<Scenario> scenarios;
+
+    /**
+     * Tree ID -> job needed by a scenario which is not written yet. Jobs which failed are removed at once,
+     * so the next scenario with the same tree tries again
+     */
+    private final Map<String, Job> jobs = new HashMap<>();
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    /**
+     * @param project      project whose merges are analysed
+     * @param workingTrees working trees, i.e. workers with a clone of the repository, the jobs are run in
+     */
+    Pipeline(Project project, List<Project> workingTrees) {
+        this.project = project;
+        this.workingTrees = workingTrees;
+        idleWorkingTrees.addAll(workingTrees);
+        int size = workingTrees.size();
+        prepareQueue = new ArrayBlockingQueue<>(size);
+        buildQueue = new ArrayBlockingQueue<>(size);
+        testQueue = new ArrayBlockingQueue<>(size);
+        scenarios = new ArrayBlockingQueue<>(4 * size);
+    }
+
+    /**
+     * Analyses the given merges and passes the results to the project in the order of {@param mergeCommits}.
+     *
+     * @param mergeCommits merges to analyse
+     */
+    void run(List<RevCommit> mergeCommits) {
+        int size = workingTrees.size();
+        Metrics.gauge("queue.depth", prepareQueue::size);
+        Metrics.gauge("queue.build", buildQueue::size);
+        Metrics.gauge("queue.test", testQueue::size);
+        Metrics.gauge("workers.size", () -> size);
+        Metrics.gauge("workers.busy", () -> size - idleWorkingTrees.size());
+
+        start("enumerate", 1, () -> enumerate(mergeCommits));
+        start("prepare", size, () -> stage(prepareQueue, this::prepare));
+        start("build", size, () -> stage(buildQueue, this::build));
+        start("test", size, () -> stage(testQueue, this::test));
+        try {
+            for (int i = 0; i < mergeCommits.size(); i++) {
+                Scenario scenario = scenarios.take();
+                try {
+                    write(scenario, (i + 1) + "/" + mergeCommits.size());
+                } finally {
+                    forget(scenario);
+                }
+            }
+        } catch (InterruptedException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+            Thread.currentThread().interrupt();
+        } finally {
+            threads.forEach(Thread::interrupt);
+        }
+    }
+
+    private void start(String name, int count, Runnable stage) {
+        for (int i = 0; i < count; i++) {
+            threads.add(Thread.ofVirtual().name(name + "-" + i).start(stage));
+        }
+    }
+
+    private interface Stage {
+        void run(Job job) throws InterruptedException;
+    }
+
+    /**
+     * Runs a stage for every job of the queue until the thread is interrupted.
+     */
+    private void stage(BlockingQueue<Job> queue, Stage stage) {
+        try {
+            while (true) {
+                Job job = queue.take();
+                Logger.setTag(job.getName());
+                try {
+                    stage.run(job);
+                } catch (RuntimeException | Error e) {
+                    //The scenarios of the job must not wait for it forever
+                    Logger.log(Logger.Level.ERROR, e.toString());
+                    if (job.workingTree != null) {
+                        idleWorkingTrees.put(job.workingTree);
+                    }
+                    remove(job);
+                    job.result.completeExceptionally(e);
+                } finally {
+                    Logger.setTag(null);
+                }
+            }
+        } catch (InterruptedException e) {
+            //End of the pipeline
+        }
+    }
+
+    private void enumerate(List<RevCommit> mergeCommits) {
+        int enumerated = 0;
+        Throwable stopped = null;
+        try {
+            for (RevCommit mergeCommit : mergeCommits) {
+                Scenario scenario = new Scenario(mergeCommit);
+                try {
+                    enumerate(scenario);
+                } catch (RuntimeException e) {
+                    scenario.error = e;
+                }
+                scenarios.put(scenario);
+                enumerated++;
+            }
+        } catch (InterruptedException e) {
+            //End of the pipeline
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error e) {
+            stopped = e;
+            throw e;
+        } finally {
+            //The writer waits for a scenario of every merge, also if this stage died
+            try {
+                for (int i = enumerated; i < mergeCommits.size() && !Thread.currentThread().isInterrupted(); i++) {
+                    Scenario scenario = new Scenario(mergeCommits.get(i));
+                    scenario.error = new RuntimeException("Enumeration stopped", stopped);
+                    scenarios.put(scenario);
+                }
+            } catch (InterruptedException e) {
+                //End of the pipeline
+            }
+        }
+    }
+
+    private void enumerate(Scenario scenario) throws InterruptedException {
+        RevCommit mergeCommit = scenario.mergeCommit;
+        scenario.mergeScenario = project.getStoredScenario(mergeCommit);
+        if (scenario.mergeScenario != null) {
+            scenario.stored = true;
+            return;
+        }
+        MergeScenario mergeScenario = project.takeMergeScenario(mergeCommit);
+        scenario.mergeScenario = mergeScenario;
+        ObjectId remergeTree = project.mergeInMemory(mergeCommit, mergeScenario);
+        if (remergeTree != null) {
+            scenario.remerge = job(remergeTree.getName(), null, mergeCommit);
+        }
+        scenario.parent1 = job(mergeScenario.getParent1().getCommitID());
+        scenario.parent2 = job(mergeScenario.getParent2().getCommitID());
+        scenario.pushed = job(mergeCommit.getName());
+        if (mergeScenario.getBase() != null) {
+            scenario.base = job(mergeScenario.getBase().getCommitID());
+        }
+    }
+
+    private Job job(String commitID) throws InterruptedException {
+        return job(project.treeOf(commitID), commitID, null);
+    }
+
+    /**
+     * Returns the job of the given tree and creates it, if the tree is not analysed yet.
+     */
+    private Job job(String treeID, String commitID, RevCommit mergeCommit) throws InterruptedException {
+        Job job;
+        boolean created = false;
+        synchronized (jobs) {
+            job = jobs.get(treeID);
+            if (job == null) {
+                job = new Job(treeID, commitID, mergeCommit);
+                jobs.put(treeID, job);
+                created = true;
+            }
+            job.scenarios++;
+        }
+        if (!created) {
+            Metrics.increment("trees.reused");
+            return job;
+        }
+        AnalysedCommit stored = project.getStoredCommit(commitID, treeID);
+        if (stored != null) {
+            Metrics.increment("commits.stored");
+            job.result.complete(stored);
+        } else {
+            prepareQueue.put(job);
+        }
+        return job;
+    }
+
+    /**
+     * Removes a job, e.g. because it failed. Scenarios which have the job already still get its result.
+     */
+    private void remove(Job job) {
+        synchronized (jobs) {
+            jobs.remove(job.treeID, job);
+        }
+    }
+
+    /**
+     * Releases the jobs of a written scenario, which are not needed by any other scenario waiting to be written.
+     * A later scenario with the same tree gets the result from the result store.
+     */
+    private void forget(Scenario scenario) {
+        synchronized (jobs) {
+            for (Job job : new Job[]{scenario.remerge, scenario.parent1, scenario.parent2, scenario.pushed,
+                    scenario.base}) {
+                if (job != null && --job.scenarios == 0) {
+                    jobs.remove(job.treeID, job);
+                }
+            }
+        }
+    }
+
+    private void prepare(Job job) throws InterruptedException {
+        job.workingTree = idleWorkingTrees.take();
+        job.start = System.nanoTime();
+        Metrics.increment("commits");
+        if (job.mergeCommit != null) {
+            Logger.log("\tCheck out remerge of " + job.mergeCommit.getName());
+            job.analysed = new AnalysedCommit(job.mergeCommit.getName());
+            if (!job.workingTree.checkoutRemerge(job.mergeCommit, job.treeID)) {
+                abort(job);
+                return;
+            }
+        } else {
+            Logger.log("\tCheck out " + job.commitID);
+            job.analysed = new AnalysedCommit(job.commitID);
+            if (!job.workingTree.checkout(job.commitID)) {
+                abort(job);
+                return;
+            }
+        }
+        buildQueue.put(job);
+    }
+
+    private void build(Job job) throws InterruptedException {
+        if (project.getBuildScript() != null) {
+            Logger.log("\t\tStart Build");
+            job.analysed.setBuild(job.workingTree.build());
+            Logger.log("\t\tFinish Build");
+        }
+        Build build = job.analysed.getBuild();
+        if (project.getTestScript() == null) {
+            finish(job);
+        } else if (build == null || build.getState().equals("SUCCESSFUL")) {
+            testQueue.put(job);
+        } else {
+            Logger.log("\t\tNO TEST BECAUSE BUILD NOT SUCCESSFUL");
+            finish(job);
+        }
+    }
+
+    private void test(Job job) throws InterruptedException {
+        Logger.log("\t\tStart Tests");
+        job.analysed.setTests(job.workingTree.test(null));
+        Logger.log("\t\tFinish Tests");
+        finish(job);
+    }
+
+    private void finish(Job job) throws InterruptedException {
+        project.storeTree(job.treeID, job.analysed);
+        release(job);
+    }
+
+    /**
+     * Ends a job whose tree could not be checked out. The result is not stored,
+     * so the tree is analysed again in the next run.
+     */
+    private void abort(Job job) throws InterruptedException {
+        Logger.log(Logger.Level.WARN, "\t\tCould not check out " + job.getName());
+        job.analysed.setBuild(Project.NOT_CHECKED_OUT);
+        remove(job);
+        release(job);
+    }
+
+    private void release(Job job) throws InterruptedException {
+        Metrics.busy("workers", job.start);
+        idleWorkingTrees.put(job.workingTree);
+        job.result.complete(job.analysed);
+    }
+
+    private void write(Scenario scenario, String progress) {
+        if (scenario.error != null) {
+            Logger.log(Logger.Level.ERROR, "Could not analyse " + scenario.mergeCommit.getName() + ": " + scenario.error);
+            project.addResult(Project.failedScenario(scenario.mergeCommit));
+            return;
+        }
+        MergeScenario mergeScenario = scenario.mergeScenario;
+        if (!scenario.stored) {
+            try {
+                if (scenario.remerge != null) {
+                    AnalysedCommit remerge = scenario.remerge.result.get();
+                    mergeScenario.setBuild(remerge.getBuild());
+                    mergeScenario.setTests(remerge.getTests());
+                } else if (project.getBuildScript() != null) {
+                    mergeScenario.setBuild(new Build(
+                            "CONFLICTING".equals(mergeScenario.getMerge().getState())
+                                    ? "NO BUILD BECAUSE OF CONFLICT" : "NO BUILD POSSIBLE", 0));
+                }
+                copy(scenario.parent1, mergeScenario.getParent1());
+                copy(scenario.parent2, mergeScenario.getParent2());
+                copy(scenario.pushed, mergeScenario.getPushed());
+                copy(scenario.base, mergeScenario.getBase());
+            } catch (ExecutionException e) {
+                Logger.log(Logger.Level.ERROR, e.getCause().toString());
+                project.addResult(Project.failedScenario(scenario.mergeCommit));
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            project.storeScenario(scenario.mergeCommit, mergeScenario);
+            Metrics.increment("scenarios");
+            if ("CONFLICTING".equals(mergeScenario.getMerge().getState())) {
+                Metrics.increment("scenarios.conflicting");
+            }
+        }
+        Logger.log("Finished " + progress + " " + scenario.mergeCommit.getName());
+        project.addResult(mergeScenario);
+    }
+
+    private static void copy(Job job, AnalysedCommit commit) throws ExecutionException, InterruptedException {
+        if (job != null) {
+            AnalysedCommit result = job.result.get();
+            commit.setTree(job.treeID);
+            commit.setBuild(result.getBuild());
+            commit.setTests(result.getTests());
+        }
+    }
+}
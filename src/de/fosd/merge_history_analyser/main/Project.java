@@ -6,23 +6,54 @@ import com.thoughtworks.xstream.annotations.XStreamImplicit;
 import com.thoughtworks.xstream.annotations.XStreamOmitField;
 
 import de.fosd.merge_history_analyser.data.*;
+import de.fosd.merge_history_analyser.merge.JGitMergeStrategy;
+import de.fosd.merge_history_analyser.merge.MergeInput;
+import de.fosd.merge_history_analyser.merge.MergeStrategy;
 
+import de.fosd.merge_history_analyser.util.JUnitReportParser;
 import de.fosd.merge_history_analyser.util.Logger;
+import de.fosd.merge_history_analyser.util.Memoizer;
+import de.fosd.merge_history_analyser.util.Metrics;
+import de.fosd.merge_history_analyser.util.ProcessRunner;
+import de.fosd.merge_history_analyser.util.ResultStore;
+import de.fosd.merge_history_analyser.util.Util;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
+import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.MergeResult;
-import org.eclipse.jgit.api.ResetCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryBuilder;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -31,6 +62,20 @@ import java.util.stream.Collectors;
 @XStreamAlias("Project")
 class Project {
 
+    private static final List<MergeStrategy> DEFAULT_MERGE_STRATEGIES =
+            Collections.singletonList(new JGitMergeStrategy(org.eclipse.jgit.merge.MergeStrategy.RECURSIVE));
+
+    /**
+     * Build of a tree which could not be checked out. Results containing it are not stored,
+     * so the tree is analysed again in the next run.
+     */
+    static final Build NOT_CHECKED_OUT = new Build("NO BUILD POSSIBLE", 0);
+
+    /**
+     * State of the merge of a placeholder written for a merge scenario whose analysis failed
+     */
+    static final String ANALYSIS_FAILED = "ANALYSIS FAILED";
+
     @XStreamAsAttribute
     private String name;
 
@@ -41,12 +86,24 @@ class Project {
     @XStreamOmitField
     private String localPath;
 
+    /**
+     * Directory builds and tests run in, the working tree or a snapshot of a tree
+     */
+    @XStreamOmitField
+    private String buildPath;
+
     @XStreamOmitField
     private Repository localRepo;
 
     @XStreamOmitField
     private Git git;
 
+    @XStreamOmitField
+    private MergeEnumerator mergeEnumerator;
+
+    @XStreamOmitField
+    private WorkingTree workingTree;
+
     @XStreamImplicit
     private List<MergeScenario> mergeScenarios;
 
@@ -59,38 +116,369 @@ class Project {
     @XStreamOmitField
     private boolean logTestMessage;
 
+    @XStreamOmitField
+    private int workers = 1;
+
+    /**
+     * Wall-clock limits in seconds for build and test, 0 for no limit
+     */
+    @XStreamOmitField
+    private long buildTimeout, testTimeout;
+
+    /**
+     * Limits for every process started by build- and test-script, 0 for no limit
+     */
+    @XStreamOmitField
+    private long cpuLimitSeconds, memoryLimitKb;
+
+    @XStreamOmitField
+    private ResultStore resultStore;
+
+    @XStreamOmitField
+    private ResultWriter resultWriter;
+
+    /**
+     * Tree ID -> build and test results of a tree which is being analysed, shared with all workers.
+     * Finished results are not kept in memory, they are reloaded from the {@link #resultStore}
+     */
+    @XStreamOmitField
+    private Memoizer<String, AnalysedCommit> analysedCommits = new Memoizer<>(false);
+
+    /**
+     * IDs of the trees analysed in this run, shared with all workers
+     */
+    @XStreamOmitField
+    private Set<String> analysedTrees = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Merge scenarios written as placeholders in this run, see {@link #failedScenario(RevCommit)}
+     */
+    @XStreamOmitField
+    private AtomicInteger failedScenarios = new AtomicInteger();
+
+    /**
+     * Commit ID -> merge scenario merged in memory before its analysis, e.g. by the {@link #scheduler}.
+     * The analysis takes the scenario over instead of merging again. Shared with all workers
+     */
+    @XStreamOmitField
+    private Map<String, MergeScenario> mergedScenarios = new ConcurrentHashMap<>();
+
+    /**
+     * Hash of build- and test-script, results are only valid for the scripts they were produced with
+     */
+    @XStreamOmitField
+    private String scriptHash;
+
+    /**
+     * Tasks and arguments for the Gradle Tooling API, null if build- and test-scripts are used
+     */
+    @XStreamOmitField
+    private String[] gradleBuildTasks, gradleTestTasks, gradleArguments;
+
+    @XStreamOmitField
+    private GradleExecutor gradleExecutor;
+
+    /**
+     * Gradle connections of this project and all workers, which have to be closed at the end
+     */
+    @XStreamOmitField
+    private List<GradleExecutor> gradleExecutors = new CopyOnWriteArrayList<>();
+
+    /**
+     * Selects the tests run on the remerge, null to run all tests
+     */
+    @XStreamOmitField
+    private TestSelector testSelector;
+
+    /**
+     * Orders the merges before they are analysed, null to analyse them in history order
+     */
+    @XStreamOmitField
+    private MergeScheduler scheduler;
+
+    /**
+     * Hands out the merges to workers in other processes, null to analyse them in this process
+     */
+    @XStreamOmitField
+    private Coordinator coordinator;
+
+    /**
+     * Strategies the parents are merged with, the first one gives the merge which is built and tested.
+     * Null for the recursive strategy of JGit without recording its name.
+     */
+    @XStreamOmitField
+    private List<MergeStrategy> mergeStrategies;
+
+    /**
+     * Whether checkout, build and test of different commits overlap, see {@link Pipeline}
+     */
+    @XStreamOmitField
+    private boolean pipeline;
+
+    /**
+     * Whether the working trees of the pipeline are snapshots assembled from a blob store instead of clones
+     */
+    @XStreamOmitField
+    private boolean snapshots;
+
+    /**
+     * Materializes the trees of a snapshot worker, null for a worker with a working tree
+     */
+    @XStreamOmitField
+    private Materializer materializer;
+
     Project(String localPath, String remotePath, String buildScript, String testScript, boolean logTestMessage) {
         if (localPath == null || !(new File(localPath).isDirectory())) {
             throw new RuntimeException("Local repository does not exist: " + localPath);
         }
         this.name = localPath.substring(localPath.lastIndexOf("/") + 1);
         this.localPath = localPath;
+        this.buildPath = localPath;
         this.buildScript = buildScript;
         this.testScript = testScript;
         this.logTestMessage = logTestMessage;
+        this.scriptHash = Util.hashFiles(buildScript, testScript);
         mergeScenarios = new LinkedList<>();
         //init
         try {
             localRepo = new RepositoryBuilder().findGitDir(new File(localPath)).build();
             git = new Git(localRepo);
+            mergeEnumerator = new MergeEnumerator(localRepo);
+            workingTree = new WorkingTree(localRepo, git);
         } catch (IOException e) {
-            Logger.log(e.getMessage());
+            Logger.log(Logger.Level.ERROR, e.getMessage());
         }
         this.remotePath = remotePath != null ? remotePath : localRepo.getConfig().getString("remote", "origin", "url");
     }
 
+    /**
+     * Creates a snapshot worker sharing the repository of the given project.
+     * It has no working tree of its own, all trees are materialized in the {@code buildPath}.
+     *
+     * @param project      project whose repository is shared
+     * @param buildPath    directory of the snapshots
+     * @param materializer materializer of the trees
+     */
+    private Project(Project project, String buildPath, Materializer materializer) {
+        this.name = project.name;
+        this.localPath = project.localPath;
+        this.remotePath = project.remotePath;
+        this.buildPath = buildPath;
+        this.logTestMessage = project.logTestMessage;
+        this.localRepo = project.localRepo;
+        this.git = project.git;
+        this.mergeEnumerator = project.mergeEnumerator;
+        this.materializer = materializer;
+        mergeScenarios = new LinkedList<>();
+    }
+
     public String getName() {
         return name;
     }
 
+    /**
+     * Returns the enumerator of merges, which can be used to filter the merges to analyse.
+     *
+     * @return enumerator used for all merge lookups of this project
+     */
+    MergeEnumerator getMergeEnumerator() {
+        return mergeEnumerator;
+    }
+
+    public String getRemotePath() {
+        return remotePath;
+    }
+
+    public String getBuildScript() {
+        return buildScript;
+    }
+
+    public String getTestScript() {
+        return testScript;
+    }
+
+    /**
+     * Sets the number of merge scenarios which are analysed at the same time.
+     * Every worker operates on its own clone of the repository.
+     *
+     * @param workers number of parallel workers, values smaller than 2 disable parallel analysis
+     */
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Sets the time after which a build is aborted and recorded as TIMEOUT.
+     *
+     * @param buildTimeout wall-clock time in seconds, 0 for no limit
+     */
+    public void setBuildTimeout(long buildTimeout) {
+        this.buildTimeout = buildTimeout;
+    }
+
+    /**
+     * @return wall-clock time in seconds after which a build is aborted, 0 for no limit
+     */
+    public long getBuildTimeout() {
+        return buildTimeout;
+    }
+
+    /**
+     * Sets the time after which a test run is aborted and recorded as TIMEOUT.
+     *
+     * @param testTimeout wall-clock time in seconds, 0 for no limit
+     */
+    public void setTestTimeout(long testTimeout) {
+        this.testTimeout = testTimeout;
+    }
+
+    /**
+     * Limits the CPU time of every process started by build- and test-script.
+     *
+     * @param cpuLimitSeconds CPU time in seconds, 0 for no limit
+     */
+    public void setCpuLimit(long cpuLimitSeconds) {
+        this.cpuLimitSeconds = cpuLimitSeconds;
+    }
+
+    /**
+     * Limits the virtual memory of every process started by build- and test-script.
+     *
+     * @param memoryLimitKb virtual memory in kilobytes, 0 for no limit
+     */
+    public void setMemoryLimit(long memoryLimitKb) {
+        this.memoryLimitKb = memoryLimitKb;
+    }
+
+    /**
+     * Builds and tests with the Gradle Tooling API instead of build- and test-scripts.
+     * The Gradle daemon is kept running between commits and no clean task is run, so builds are incremental.
+     *
+     * @param buildTasks tasks to build a commit, null to skip the build
+     * @param testTasks  tasks to test a commit, null to skip the tests
+     * @param arguments  additional Gradle arguments, e.g. --build-cache
+     */
+    public void useGradleTooling(String[] buildTasks, String[] testTasks, String[] arguments) {
+        this.gradleBuildTasks = buildTasks;
+        this.gradleTestTasks = testTasks;
+        this.gradleArguments = arguments;
+        this.buildScript = buildTasks == null ? null : "gradle " + String.join(" ", buildTasks);
+        this.testScript = testTasks == null ? null : "gradle " + String.join(" ", testTasks);
+        this.scriptHash = Util.hashStrings(buildScript, testScript, String.join(" ", arguments));
+    }
+
+    /**
+     * Only runs the tests affected by the changes between the remerge and its parents.
+     * All other tests are recorded as inherited from a parent.
+     *
+     * @param testSelector selector of the tests to run, null to run all tests
+     */
+    void setTestSelector(TestSelector testSelector) {
+        this.testSelector = testSelector;
+    }
+
+    /**
+     * Analyses the merges in the order given by a scheduler instead of history order.
+     * The results are written in the same order.
+     *
+     * @param scheduler scheduler of the merges, null to analyse them in history order
+     */
+    void setScheduler(MergeScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Lets workers in other processes analyse the merges instead of this project.
+     *
+     * @param coordinator coordinator of the workers, null to analyse the merges in this process
+     */
+    void setCoordinator(Coordinator coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * Merges with the given strategies instead of the recursive strategy of JGit. The merge of the first strategy
+     * is built and tested, the merges of the others are only recorded to compare the strategies.
+     *
+     * @param mergeStrategies strategies to merge with, null for the recursive strategy of JGit
+     */
+    void setMergeStrategies(List<MergeStrategy> mergeStrategies) {
+        this.mergeStrategies = mergeStrategies;
+    }
+
+    private List<MergeStrategy> getMergeStrategies() {
+        return mergeStrategies != null ? mergeStrategies : DEFAULT_MERGE_STRATEGIES;
+    }
+
+    /**
+     * Analyses the merges in a {@link Pipeline}, which checks out, builds and tests different commits at the same
+     * time and builds every tree only once. Not used with a test selector, as it needs the parents before the remerge.
+     *
+     * @param pipeline true to analyse the merges in a pipeline
+     */
+    void setPipeline(boolean pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Builds and tests every tree of the {@link Pipeline} in a fresh snapshot, see {@link Materializer},
+     * instead of checking it out in a clone of the repository.
+     *
+     * @param snapshots true to use snapshots
+     */
+    void setSnapshots(boolean snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    private synchronized GradleExecutor getGradleExecutor() {
+        if (gradleExecutor == null) {
+            gradleExecutor = new GradleExecutor(new File(buildPath), gradleBuildTasks, gradleTestTasks, gradleArguments);
+            gradleExecutors.add(gradleExecutor);
+        }
+        return gradleExecutor;
+    }
+
+    /**
+     * Releases resources held for the analysis, e.g. connections to Gradle daemons.
+     */
+    public void close() {
+        for (GradleExecutor executor : gradleExecutors) {
+            executor.close();
+        }
+        gradleExecutors.clear();
+        if (testSelector != null) {
+            testSelector.save();
+        }
+    }
+
+    /**
+     * Sets a store where finished merge scenarios are saved immediately.
+     * Merge scenarios found in the store are not analysed again.
+     *
+     * @param resultStore store for results, null disables storing
+     */
+    public void setResultStore(ResultStore resultStore) {
+        this.resultStore = resultStore;
+    }
+
+    /**
+     * Sets a writer which receives every merge scenario as soon as it is finished, in history order.
+     * Merge scenarios passed to the writer are not kept in {@link #mergeScenarios}.
+     *
+     * @param resultWriter writer for results, null keeps all results in memory
+     */
+    void setResultWriter(ResultWriter resultWriter) {
+        this.resultWriter = resultWriter;
+    }
+
     /**
      * Analyses all merges found in the project.
      */
     public void analyse() {
-        checkoutMaster();
+        checkoutDefaultBranch();
         List<RevCommit> mergeCommits = getMergeCommits();
         this.mergeScenarios = analyseMergeScenarios(mergeCommits);
-        checkoutMaster();
+        checkoutDefaultBranch();
     }
 
     /**
@@ -99,14 +487,18 @@ class Project {
      * @param commitIDs commit IDs of the commits which shall be analysed
      */
     public void analyse(List<String> commitIDs) {
-        checkoutMaster();
+        checkoutDefaultBranch();
         List<RevCommit> mergeCommits = getMergeCommits();
         List<RevCommit> mergeCommitsToBeAnalysed =
-                mergeCommits.stream()
-                        .filter(commit -> commitIDs.contains(commit.getId().name()))
-                        .collect(Collectors.toCollection(LinkedList::new));
+                commitIDs.stream()
+                        .mapToInt(mergeEnumerator::indexOf)
+                        .filter(index -> index >= 0)
+                        .sorted()
+                        .distinct()
+                        .mapToObj(mergeCommits::get)
+                        .collect(Collectors.toCollection(ArrayList::new));
         this.mergeScenarios = analyseMergeScenarios(mergeCommitsToBeAnalysed);
-        checkoutMaster();
+        checkoutDefaultBranch();
     }
 
     /**
@@ -116,9 +508,9 @@ class Project {
      * @param end   skip all commits after
      */
     public void analyseFromTo(String start, String end) {
-        checkoutMaster();
+        checkoutDefaultBranch();
         this.mergeScenarios = analyseMergeScenarios(getMergeCommits(start, end));
-        checkoutMaster();
+        checkoutDefaultBranch();
     }
 
     /**
@@ -128,47 +520,24 @@ class Project {
      * @param end   index to end with
      */
     public void analyseFromTo(int start, int end) {
-        checkoutMaster();
+        checkoutDefaultBranch();
         List<RevCommit> mergeCommits = getMergeCommits();
         this.mergeScenarios = analyseMergeScenarios(mergeCommits.subList(start, end));
-        checkoutMaster();
+        checkoutDefaultBranch();
     }
 
     /**
      * Returns all commits from {@param start} to {@param end} that are merge commits.
      * <p>
      * We consider a commit as a merge commit if its number of parents is greater than 1.
+     * Only merges accepted by the filters of the {@link MergeEnumerator} are returned.
      *
      * @param start skip all commits before
      * @param end   skip all commits after
      * @return all commits within specified range that are merges
      */
     public List<RevCommit> getMergeCommits(String start, String end) {
-        List<RevCommit> merges = new LinkedList<>();
-        Iterable<RevCommit> log;
-        boolean addCommits = start == null;
-        try {
-            log = git.log().call();
-            for (RevCommit commit : log) {
-                if (!addCommits) {
-                    if (commit.getName().equals(start)) {
-                        addCommits = true;
-                    } else {
-                        continue;
-                    }
-                }
-                if (commit.getParentCount() > 1) {
-                    merges.add(commit);
-                }
-                if (end != null && commit.getName().equals(end)) {
-                    break;
-                }
-            }
-        } catch (GitAPIException e) {
-            Logger.log(e.getMessage());
-        }
-
-        return merges;
+        return mergeEnumerator.range(start, end);
     }
 
     /**
@@ -179,7 +548,7 @@ class Project {
      * @return all commits which are merges
      */
     public List<RevCommit> getMergeCommits() {
-        return getMergeCommits(null, null);
+        return mergeEnumerator.getMerges();
     }
 
     /**
@@ -188,7 +557,7 @@ class Project {
      * @return number of mergescenarios.
      */
     public int getNumberOfMerges() {
-        checkoutMaster();
+        checkoutDefaultBranch();
         return getMergeCommits().size();
     }
 
@@ -199,14 +568,8 @@ class Project {
      * @return index of the commit. Return -1 if there is no such merge commit.
      */
     public int getMergeIndexOf(String commitID) {
-        checkoutMaster();
-        List<RevCommit> mergeCommits = getMergeCommits();
-        for (int i = 0; i < mergeCommits.size(); i++) {
-            if (mergeCommits.get(i).getId().getName().equals(commitID)) {
-                return i;
-            }
-        }
-        return -1;
+        checkoutDefaultBranch();
+        return mergeEnumerator.indexOf(commitID);
     }
 
     /**
@@ -218,12 +581,39 @@ class Project {
     public List<MergeScenario> analyseMergeScenarios(List<RevCommit> mergeCommits) {
         Logger.log("Analysing " + mergeCommits.size() + " merges");
         long startTime = System.currentTimeMillis();
-        for (int i = 0; i < mergeCommits.size(); i++) {
-            RevCommit commit = mergeCommits.get(i);
-            Logger.log("Working on " + (i + 1) + "/" + mergeCommits.size() + " " + commit.getId().getName());
-            MergeScenario mergeScenario = analyseMergeScenario(commit);
-            mergeScenarios.add(mergeScenario);
-            Logger.log("Finished");
+        if (scheduler != null) {
+            mergeCommits = scheduler.schedule(this, mergeCommits);
+        }
+        if (coordinator != null) {
+            //The workers merge in their own processes
+            mergedScenarios.clear();
+            try {
+                coordinator.run(mergeCommits, this::addResult);
+            } catch (IOException e) {
+                Logger.log(Logger.Level.ERROR, "Could not start coordinator: " + e.getMessage());
+            }
+        } else if (pipeline && testSelector == null && !isConflictDetectionOnly()) {
+            analyseMergeScenariosPipelined(mergeCommits);
+        } else if (workers > 1) {
+            analyseMergeScenariosParallel(mergeCommits);
+        } else {
+            AtomicInteger queued = new AtomicInteger(mergeCommits.size());
+            Metrics.gauge("queue.depth", queued::get);
+            Metrics.gauge("workers.size", () -> 1);
+            for (int i = 0; i < mergeCommits.size(); i++) {
+                RevCommit commit = mergeCommits.get(i);
+                Logger.log("Working on " + (i + 1) + "/" + mergeCommits.size() + " " + commit.getId().getName());
+                queued.decrementAndGet();
+                long start = System.nanoTime();
+                MergeScenario mergeScenario = analyseMergeScenarioStored(commit);
+                Metrics.busy("workers", start);
+                addResult(mergeScenario);
+                Logger.log("Finished");
+            }
+        }
+        if (failedScenarios.get() > 0) {
+            Logger.log(Logger.Level.ERROR, "Could not analyse " + failedScenarios.get() + " of " + mergeCommits.size()
+                    + " merges, their merge state is " + ANALYSIS_FAILED);
         }
         long execTimeSeconds = (System.currentTimeMillis() - startTime) / 1000;
         Logger.log("Total time: " + execTimeSeconds/60 + "m " + ((int)execTimeSeconds%60) + "s");
@@ -231,161 +621,789 @@ class Project {
     }
 
     /**
-     * Analyses one given RevCommit which is a merge.
+     * Passes a finished merge scenario to the {@link #resultWriter} or keeps it in {@link #mergeScenarios}.
      *
-     * @param mergeCommit JGit RevCommit to analyse
-     * @return analysed MergeScenario
+     * @param mergeScenario analysed merge scenario
      */
-    public MergeScenario analyseMergeScenario(RevCommit mergeCommit) {
-        MergeScenario mergeScenario = new MergeScenario(
-                mergeCommit.getName(), mergeCommit.getParents()[0].getName(), mergeCommit.getParents()[1].getName());
-
-        checkoutMaster();
+    void addResult(MergeScenario mergeScenario) {
+        if (ANALYSIS_FAILED.equals(mergeScenario.getMerge().getState())) {
+            failedScenarios.incrementAndGet();
+            Metrics.increment("scenarios.failed");
+        }
+        if (resultWriter == null) {
+            mergeScenarios.add(mergeScenario);
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            resultWriter.write(mergeScenario);
+            Metrics.record("serialize", start);
+        } catch (IOException e) {
+            Logger.log(Logger.Level.ERROR, "Could not write result of " + mergeScenario.getCommitID() + ": " + e.getMessage());
+        }
+    }
 
-        //TODO support other merge tools
-        //Merge
-        Logger.log("\tStart Merge");
-        mergeScenario.setMerge(merge(mergeCommit));
-        Logger.log("\tFinish Merge");
+    /**
+     * Creates a placeholder for a merge scenario whose analysis failed, so the merge is not silently missing
+     * from the results. It only contains the commits and the merge state {@link #ANALYSIS_FAILED}
+     * and is not stored, so the merge is analysed again in the next run.
+     *
+     * @param mergeCommit merge whose analysis failed
+     * @return placeholder for the merge scenario
+     */
+    static MergeScenario failedScenario(RevCommit mergeCommit) {
+        MergeScenario mergeScenario = new MergeScenario(mergeCommit.getName(), mergeCommit.getParent(0).getName(),
+                mergeCommit.getParent(1).getName());
+        mergeScenario.getMerge().setState(ANALYSIS_FAILED);
+        return mergeScenario;
+    }
 
-        //Build
-        if (buildScript != null) {
-            if (mergeScenario.getMerge().getState().equals("CONFLICTING")) {
-                mergeScenario.setBuild(new Build("NO BUILD BECAUSE OF CONFLICT", 0));
-                Logger.log("NO BUILD BECAUSE OF CONFLICT");
-            } else {
-                Logger.log("\tStart Build");
-                mergeScenario.setBuild(build());
-                Logger.log("\tFinish Build");
+    /**
+     * Analyses the given merges with {@link #workers} workers at the same time.
+     * Each worker owns a clone of the repository, so merging, building and testing of different merge scenarios
+     * do not interfere. The results are added in the order of {@param mergeCommits}.
+     *
+     * @param mergeCommits JGit RevCommits to analyse
+     */
+    private void analyseMergeScenariosParallel(List<RevCommit> mergeCommits) {
+        BlockingQueue<Project> idleWorkers = new LinkedBlockingQueue<>();
+        for (int i = 0; i < workers; i++) {
+            Project worker = createWorker(i);
+            if (worker != null) {
+                idleWorkers.add(worker);
             }
         }
-
-        //Tests
-        if (testScript != null) {
-            if (mergeScenario.getBuild().getState().equals("SUCCESSFUL")) {
-                Logger.log("\tStart Tests");
-                mergeScenario.setTests(test());
-                Logger.log("\tFinish Tests");
-            } else {
-                Logger.log("\tNO TEST BECAUSE BUILD NOT SUCCESSFUL");
-            }
+        if (idleWorkers.isEmpty()) {
+            throw new RuntimeException("Could not create any worker for " + localPath);
         }
+        Logger.log("Using " + idleWorkers.size() + " workers");
+        int poolSize = idleWorkers.size();
+        AtomicInteger queued = new AtomicInteger(mergeCommits.size());
+        Metrics.gauge("queue.depth", queued::get);
+        Metrics.gauge("workers.size", () -> poolSize);
+        Metrics.gauge("workers.busy", () -> poolSize - idleWorkers.size());
 
-        checkoutMaster();
+        ExecutorService executor = Executors.newFixedThreadPool(idleWorkers.size());
+        List<Future<MergeScenario>> results = new ArrayList<>(mergeCommits.size());
+        for (int i = 0; i < mergeCommits.size(); i++) {
+            RevCommit commit = mergeCommits.get(i);
+            String progress = (i + 1) + "/" + mergeCommits.size() + " " + commit.getId().getName();
+            results.add(executor.submit(() -> {
+                Project worker = idleWorkers.take();
+                queued.decrementAndGet();
+                long start = System.nanoTime();
+                //Messages of different merges are interleaved
+                Logger.setTag(commit.getId().abbreviate(7).name());
+                try {
+                    Logger.log("Working on " + progress + " in " + worker.localPath);
+                    MergeScenario mergeScenario = worker.analyseMergeScenarioStored(commit);
+                    Logger.log("Finished " + progress);
+                    return mergeScenario;
+                } finally {
+                    Logger.setTag(null);
+                    Metrics.busy("workers", start);
+                    idleWorkers.put(worker);
+                }
+            }));
+        }
+        executor.shutdown();
 
-        //Parent 1
-        Logger.log("\tAnalyse Parent " + mergeScenario.getParent1().getCommitID());
+        //Collect results in history order
         try {
-            git.checkout().setName(mergeScenario.getParent1().getCommitID()).call();
-        } catch (GitAPIException e) {
-            Logger.log(e.getMessage());
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    addResult(results.get(i).get());
+                } catch (ExecutionException e) {
+                    Logger.log(Logger.Level.ERROR, e.getCause().toString());
+                    addResult(failedScenario(mergeCommits.get(i)));
+                }
+                //Release the finished merge scenario
+                results.set(i, null);
+            }
+        } catch (InterruptedException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
         }
-        //Build
-        if (buildScript != null) {
-            Logger.log("\t\tStart Build");
-            mergeScenario.getParent1().setBuild(build());
-            Logger.log("\t\tFinish Build");
+    }
+
+    /**
+     * Analyses the given merges in a {@link Pipeline} with {@link #workers} working trees.
+     *
+     * @param mergeCommits JGit RevCommits to analyse
+     */
+    private void analyseMergeScenariosPipelined(List<RevCommit> mergeCommits) {
+        List<Project> workingTrees = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            Project worker = snapshots ? createSnapshotWorker(i) : createWorker(i);
+            if (worker != null) {
+                workingTrees.add(worker);
+            }
         }
-        //Tests
-        if (testScript != null) {
-            if (mergeScenario.getBuild().getState().equals("SUCCESSFUL")) {
-                Logger.log("\t\tStart Tests");
-                    mergeScenario.getParent1().setTests(test());
-                Logger.log("\t\tFinish Tests");
+        if (workingTrees.isEmpty()) {
+            throw new RuntimeException("Could not create any worker for " + localPath);
+        }
+        Logger.log("Using a pipeline with " + workingTrees.size() + " working trees");
+        new Pipeline(this, workingTrees).run(mergeCommits);
+    }
+
+    /**
+     * Creates a project working on a separate clone of this repository.
+     * Existing clones from previous runs are reused and only fetch new commits.
+     *
+     * @param index number of the worker
+     * @return project for the worker or null if the clone could not be created
+     */
+    Project createWorker(int index) {
+        if (isConflictDetectionOnly()) {
+            //Merges are done in memory, so all workers can share this repository
+            return this;
+        }
+        File workerDir = new File(localPath + "_worker" + index);
+        try {
+            if (new File(workerDir, ".git").isDirectory()) {
+                Logger.log("Update worker repository " + workerDir);
+                try (Git workerGit = Git.open(workerDir)) {
+                    workerGit.fetch().setRemote("origin").call();
+                }
             } else {
-                Logger.log("\tNO TEST BECAUSE BUILD NOT SUCCESSFUL");
+                Logger.log("Clone worker repository " + workerDir);
+                CloneCommand clone = Git.cloneRepository().setURI(localPath).setDirectory(workerDir);
+                clone.call().close();
             }
+            //Trees merged in memory by this project are written to its repository, the clone borrows its objects
+            File alternates = new File(workerDir, ".git/objects/info/alternates");
+            alternates.getParentFile().mkdirs();
+            Files.write(alternates.toPath(), (new File(localRepo.getDirectory(), "objects").getAbsolutePath() + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | GitAPIException e) {
+            Logger.log(Logger.Level.ERROR, e.getMessage());
+            return null;
         }
+        Project worker = new Project(workerDir.getAbsolutePath(), remotePath, null, null, logTestMessage);
+        copySettingsTo(worker);
+        worker.checkoutDefaultBranch();
+        return worker;
+    }
 
-        checkoutMaster();
+    /**
+     * Creates a project building and testing snapshots of trees in a separate directory.
+     * The snapshots are materialized from this repository, so no clone is needed.
+     *
+     * @param index number of the worker
+     * @return project for the worker
+     */
+    Project createSnapshotWorker(int index) {
+        synchronized (this) {
+            if (materializer == null) {
+                materializer = new Materializer(localRepo, new File(localPath + "_blobs"));
+            }
+        }
+        Project worker = new Project(this, new File(localPath + "_snapshot" + index).getAbsolutePath(), materializer);
+        copySettingsTo(worker);
+        return worker;
+    }
 
-        //Parent 2
-        Logger.log("\t Analyse Parent " + mergeScenario.getParent2().getCommitID());
-        try {
-            git.checkout().setName(mergeScenario.getParent2().getCommitID()).call();
-        } catch (GitAPIException e) {
-            Logger.log(e.getMessage());
+    private void copySettingsTo(Project worker) {
+        worker.buildScript = buildScript;
+        worker.testScript = testScript;
+        worker.scriptHash = scriptHash;
+        worker.gradleBuildTasks = gradleBuildTasks;
+        worker.gradleTestTasks = gradleTestTasks;
+        worker.gradleArguments = gradleArguments;
+        worker.gradleExecutors = gradleExecutors;
+        worker.buildTimeout = buildTimeout;
+        worker.testTimeout = testTimeout;
+        worker.cpuLimitSeconds = cpuLimitSeconds;
+        worker.memoryLimitKb = memoryLimitKb;
+        worker.resultStore = resultStore;
+        worker.analysedCommits = analysedCommits;
+        worker.analysedTrees = analysedTrees;
+        worker.mergedScenarios = mergedScenarios;
+        worker.testSelector = testSelector;
+        worker.mergeStrategies = mergeStrategies;
+    }
+
+    /**
+     * Finds a merge by its ID. If the merge is missing, new commits are fetched from origin first.
+     *
+     * @param commitID ID of the merge
+     * @return the merge or null if there is no such commit
+     */
+    RevCommit parseMergeCommit(String commitID) {
+        ObjectId id = ObjectId.fromString(commitID);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try (RevWalk walk = new RevWalk(localRepo)) {
+                return walk.parseCommit(id);
+            } catch (IOException e) {
+                if (attempt == 0) {
+                    Logger.log("\tFetch missing commit " + commitID);
+                    try {
+                        git.fetch().setRemote("origin").call();
+                    } catch (GitAPIException fetchException) {
+                        Logger.log(Logger.Level.WARN, fetchException.getMessage());
+                        return null;
+                    }
+                } else {
+                    Logger.log(Logger.Level.WARN, e.getMessage());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks up the given merge in the {@link #resultStore} and only analyses it if there is no stored result.
+     * New results are stored immediately.
+     *
+     * @param mergeCommit JGit RevCommit to analyse
+     * @return analysed MergeScenario
+     */
+    MergeScenario analyseMergeScenarioStored(RevCommit mergeCommit) {
+        MergeScenario stored = getStoredScenario(mergeCommit);
+        if (stored != null) {
+            return stored;
+        }
+        MergeScenario mergeScenario = analyseMergeScenario(mergeCommit);
+        storeScenario(mergeCommit, mergeScenario);
+        return mergeScenario;
+    }
+
+    /**
+     * @param mergeCommit merge to look up
+     * @return true if the {@link #resultStore} contains the merge scenario, which is not read
+     */
+    boolean hasStoredScenario(RevCommit mergeCommit) {
+        return resultStore != null && resultStore.contains(scenarioKey(mergeCommit));
+    }
+
+    private String scenarioKey(RevCommit mergeCommit) {
+        return "scenario:" + mergeCommit.getName() + ":" + scriptHash + (testSelector != null ? ":selected" : "")
+                + (mergeStrategies != null
+                ? ":" + mergeStrategies.stream().map(MergeStrategy::getKey).collect(Collectors.joining(",")) : "");
+    }
+
+    /**
+     * @param mergeCommit merge to look up
+     * @return merge scenario from the {@link #resultStore}, null if there is none
+     */
+    MergeScenario getStoredScenario(RevCommit mergeCommit) {
+        if (resultStore == null) {
+            return null;
+        }
+        Object stored = resultStore.get(scenarioKey(mergeCommit));
+        if (stored instanceof MergeScenario) {
+            Logger.log("\tLoaded from result store");
+            Metrics.increment("scenarios.stored");
+            return (MergeScenario) stored;
+        }
+        return null;
+    }
+
+    void storeScenario(RevCommit mergeCommit, MergeScenario mergeScenario) {
+        if (resultStore != null && !containsCheckoutFailure(mergeScenario)) {
+            long start = System.nanoTime();
+            resultStore.put(scenarioKey(mergeCommit), mergeScenario);
+            Metrics.record("serialize", start);
+        }
+    }
+
+    private static boolean containsCheckoutFailure(MergeScenario mergeScenario) {
+        for (AnalysedCommit commit : new AnalysedCommit[]{mergeScenario.getParent1(), mergeScenario.getParent2(),
+                mergeScenario.getPushed(), mergeScenario.getBase()}) {
+            if (commit != null && commit.getBuild() == NOT_CHECKED_OUT) {
+                return true;
+            }
         }
+        return mergeScenario.getBuild() == NOT_CHECKED_OUT;
+    }
+
+    /**
+     * Analyses one given RevCommit which is a merge.
+     *
+     * @param mergeCommit JGit RevCommit to analyse
+     * @return analysed MergeScenario
+     */
+    public MergeScenario analyseMergeScenario(RevCommit mergeCommit) {
+        long start = System.nanoTime();
+        MergeScenario mergeScenario = analyseMergeScenarioTimed(mergeCommit);
+        Metrics.record("scenario", start);
+        Metrics.increment("scenarios");
+        if ("CONFLICTING".equals(mergeScenario.getMerge().getState())) {
+            Metrics.increment("scenarios.conflicting");
+        }
+        return mergeScenario;
+    }
+
+    private MergeScenario analyseMergeScenarioTimed(RevCommit mergeCommit) {
+        MergeScenario mergeScenario = takeMergeScenario(mergeCommit);
+
+        if (isConflictDetectionOnly()) {
+            Logger.log("\tStart Merge (in memory)");
+            mergeInMemory(mergeCommit, mergeScenario);
+            Logger.log("\tFinish Merge");
+            return mergeScenario;
+        }
+
+        //The results of the parents are needed to select the tests of the remerge
+        if (testSelector != null) {
+            analyseParents(mergeScenario);
+        }
+
+        //Merge
+        Logger.log("\tStart Merge");
+        boolean checkedOut = merge(mergeCommit, mergeScenario);
+        Logger.log("\tFinish Merge");
+
+        //A remerge with the same tree as a commit analysed before, usually the pushed commit, has the same results
+        String remergeTree = checkedOut ? mergeScenario.getMerge().getTree() : null;
+        boolean analysed = false;
+        if (remergeTree == null && mergeScenario.getMerge().getTree() != null) {
+            //The working tree contains the first parent, not the remerge
+            Logger.log(Logger.Level.WARN, "\tCould not check out remerge");
+            mergeScenario.setBuild(NOT_CHECKED_OUT);
+            analysed = true;
+        } else if (remergeTree != null) {
+            AnalysedCommit result;
+            if (testSelector == null) {
+                analysedTrees.add(remergeTree);
+                result = analysedCommits.compute(remergeTree,
+                        () -> buildAndTestStored(remergeTree, mergeCommit.getName(), false));
+            } else {
+                //Results of selected tests are only valid for this merge scenario
+                result = getAnalysedTree(remergeTree);
+            }
+            if (result != null) {
+                mergeScenario.setBuild(result.getBuild());
+                mergeScenario.setTests(result.getTests());
+                analysed = true;
+            }
+        }
+
         //Build
-        if (buildScript != null) {
-            Logger.log("\t\tStart Build");
-            mergeScenario.getParent2().setBuild(build());
-            Logger.log("\t\tFinish Build");
+        if (analysed) {
+            Logger.log("\tRemerge analysed already");
+        } else if (buildScript != null) {
+            if (mergeScenario.getMerge().getState().equals("CONFLICTING")) {
+                mergeScenario.setBuild(new Build("NO BUILD BECAUSE OF CONFLICT", 0));
+                Logger.log("NO BUILD BECAUSE OF CONFLICT");
+            } else {
+                Logger.log("\tStart Build");
+                mergeScenario.setBuild(build());
+                Logger.log("\tFinish Build");
+            }
         }
+
         //Tests
-        if (testScript != null) {
+        if (!analysed && testScript != null) {
             if (mergeScenario.getBuild().getState().equals("SUCCESSFUL")) {
-                Logger.log("\t\tStart Tests");
-                mergeScenario.getParent2().setTests(test());
-                Logger.log("\t\tFinish Tests");
+                Logger.log("\tStart Tests");
+                mergeScenario.setTests(testSelector == null ? test(null) : testSelected(mergeScenario));
+                Logger.log("\tFinish Tests");
             } else {
                 Logger.log("\tNO TEST BECAUSE BUILD NOT SUCCESSFUL");
             }
         }
 
-        checkoutMaster();
+        if (testSelector == null) {
+            analyseParents(mergeScenario);
+        }
 
         //Pushed
-        Logger.log("\t Analyse Pushed " + mergeCommit.getName());
-        try {
-            git.checkout().setName(mergeCommit.getName()).call();
-        } catch (GitAPIException e) {
-            Logger.log(e.getMessage());
+        Logger.log("\tAnalyse Pushed " + mergeCommit.getName());
+        analyseCommit(mergeScenario.getPushed());
+
+        //Base, many merges share the same base, so it is usually analysed already
+        if (mergeScenario.getBase() != null) {
+            Logger.log("\tAnalyse Base " + mergeScenario.getBase().getCommitID());
+            analyseCommit(mergeScenario.getBase());
+        }
+
+        return mergeScenario;
+    }
+
+    /**
+     * Creates the merge scenario of a merge and merges its parents in memory with all {@link #mergeStrategies}.
+     * The scenario is kept until the merge is analysed, so the analysis does not merge again.
+     *
+     * @param mergeCommit merge to analyse later
+     * @return merge scenario with the merges, but without builds and tests
+     */
+    MergeScenario premerge(RevCommit mergeCommit) {
+        MergeScenario mergeScenario = createMergeScenario(mergeCommit);
+        mergeInMemory(mergeCommit, mergeScenario);
+        mergedScenarios.put(mergeCommit.getName(), mergeScenario);
+        return mergeScenario;
+    }
+
+    /**
+     * @param mergeCommit merge to analyse
+     * @return the merge scenario kept by {@link #premerge(RevCommit)} or a new one, which is not merged yet
+     */
+    MergeScenario takeMergeScenario(RevCommit mergeCommit) {
+        MergeScenario mergeScenario = mergedScenarios.remove(mergeCommit.getName());
+        return mergeScenario != null ? mergeScenario : createMergeScenario(mergeCommit);
+    }
+
+    private MergeScenario createMergeScenario(RevCommit mergeCommit) {
+        MergeScenario mergeScenario = new MergeScenario(
+                mergeCommit.getName(), mergeCommit.getParents()[0].getName(), mergeCommit.getParents()[1].getName());
+        String mergeBaseID = findMergeBase(mergeCommit);
+        if (mergeBaseID != null) {
+            mergeScenario.setBase(new AnalysedCommit(mergeBaseID));
+        }
+        return mergeScenario;
+    }
+
+    private void analyseParents(MergeScenario mergeScenario) {
+        //Parent 1
+        Logger.log("\tAnalyse Parent " + mergeScenario.getParent1().getCommitID());
+        analyseCommit(mergeScenario.getParent1());
+
+        //Parent 2
+        Logger.log("\tAnalyse Parent " + mergeScenario.getParent2().getCommitID());
+        analyseCommit(mergeScenario.getParent2());
+    }
+
+    /**
+     * Calculates the best common ancestor of the two parents of a merge.
+     * For criss-cross merges with several merge bases the first one found is returned.
+     *
+     * @param mergeCommit merge whose parents are used
+     * @return ID of the merge base or null if the parents have no common history
+     */
+    private String findMergeBase(RevCommit mergeCommit) {
+        try (RevWalk walk = new RevWalk(localRepo)) {
+            walk.setRevFilter(RevFilter.MERGE_BASE);
+            walk.markStart(walk.parseCommit(mergeCommit.getParent(0)));
+            walk.markStart(walk.parseCommit(mergeCommit.getParent(1)));
+            RevCommit mergeBase = walk.next();
+            return mergeBase == null ? null : mergeBase.getName();
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Builds and tests an existing commit and stores the results in {@param commit}.
+     * Every commit is built and tested at most once per run, the results are shared by all merge scenarios
+     * which contain the commit.
+     *
+     * @param commit commit to analyse
+     */
+    private void analyseCommit(AnalysedCommit commit) {
+        if (buildScript == null && testScript == null) {
+            return;
+        }
+        String treeID = treeOf(commit.getCommitID());
+        if (!analysedTrees.add(treeID)) {
+            Logger.log("\t\tAlready analysed");
+            Metrics.increment("trees.reused");
+        }
+        AnalysedCommit result = analysedCommits.compute(treeID,
+                () -> buildAndTestStored(treeID, commit.getCommitID(), true));
+        commit.setTree(treeID);
+        commit.setBuild(result.getBuild());
+        commit.setTests(result.getTests());
+    }
+
+    /**
+     * Calculates the tree of a commit. Build and test results only depend on the tree and the scripts,
+     * so commits with the same tree share their results.
+     *
+     * @param commitID ID of the commit
+     * @return ID of the tree of the commit, the commit ID itself if the commit can not be read
+     */
+    String treeOf(String commitID) {
+        try (RevWalk walk = new RevWalk(localRepo)) {
+            return walk.parseCommit(ObjectId.fromString(commitID)).getTree().getName();
+        } catch (IOException | IllegalArgumentException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+            return commitID;
+        }
+    }
+
+    /**
+     * Looks up the results of a tree in the {@link #resultStore} and only builds and tests it
+     * if there is no stored result. New results are stored immediately.
+     *
+     * @param treeID   ID of the tree to analyse
+     * @param commitID ID of a commit with this tree, for results of earlier versions and for logging
+     * @param checkout true to check out the commit, false to analyse the working tree as it is
+     * @return build and test results of the tree
+     */
+    private AnalysedCommit buildAndTestStored(String treeID, String commitID, boolean checkout) {
+        AnalysedCommit stored = getStoredCommit(checkout ? commitID : null, treeID);
+        if (stored != null) {
+            Logger.log("\t\tLoaded from result store");
+            Metrics.increment("commits.stored");
+            return stored;
+        }
+        AnalysedCommit result = buildAndTest(commitID, checkout);
+        if (result == null) {
+            result = new AnalysedCommit(commitID);
+            result.setBuild(NOT_CHECKED_OUT);
+            return result;
+        }
+        storeTree(treeID, result);
+        return result;
+    }
+
+    /**
+     * Stores the results of a tree in the {@link #resultStore}.
+     *
+     * @param treeID ID of the analysed tree
+     * @param result build and test results of the tree
+     */
+    void storeTree(String treeID, AnalysedCommit result) {
+        if (resultStore != null && result.getBuild() != NOT_CHECKED_OUT) {
+            long start = System.nanoTime();
+            resultStore.put("tree:" + treeID + ":" + scriptHash, result);
+            Metrics.record("serialize", start);
+        }
+    }
+
+    /**
+     * Returns the build of a commit from an earlier run without reading its test results.
+     *
+     * @param commitID ID of the commit
+     * @return stored build of the commit, null if there is none
+     */
+    Build getStoredBuild(String commitID) {
+        if (resultStore == null) {
+            return null;
+        }
+        String key = "tree:" + treeOf(commitID) + ":" + scriptHash;
+        if (!resultStore.contains(key)) {
+            //Stored by a version which kept the results per commit
+            key = "commit:" + commitID + ":" + scriptHash;
+        }
+        return resultStore.getBuild(key);
+    }
+
+    /**
+     * @param commitID ID of the commit, null to only look for results of the tree
+     * @param treeID   ID of the tree of the commit
+     * @return stored build and test results, null if there are none
+     */
+    AnalysedCommit getStoredCommit(String commitID, String treeID) {
+        if (resultStore == null) {
+            return null;
+        }
+        Object stored = resultStore.get("tree:" + treeID + ":" + scriptHash);
+        if (stored == null && commitID != null) {
+            //Stored by a version which kept the results per commit
+            stored = resultStore.get("commit:" + commitID + ":" + scriptHash);
+        }
+        return stored instanceof AnalysedCommit ? (AnalysedCommit) stored : null;
+    }
+
+    /**
+     * Returns the results of a tree analysed in this or an earlier run without analysing it.
+     *
+     * @param treeID ID of the tree
+     * @return build and test results of the tree, null if it was not analysed yet
+     */
+    private AnalysedCommit getAnalysedTree(String treeID) {
+        AnalysedCommit result = analysedCommits.get(treeID);
+        return result != null ? result : getStoredCommit(null, treeID);
+    }
+
+    /**
+     * Builds and tests a commit.
+     * Changes the state of the local repo!
+     *
+     * @param commitID ID of the commit to analyse
+     * @param checkout true to check out the commit, false if the working tree contains the commit already
+     * @return build and test results of the commit, null if the commit could not be checked out
+     */
+    private AnalysedCommit buildAndTest(String commitID, boolean checkout) {
+        AnalysedCommit result = new AnalysedCommit(commitID);
+        Metrics.increment("commits");
+        if (checkout && !checkout(commitID)) {
+            return null;
         }
         //Build
         if (buildScript != null) {
             Logger.log("\t\tStart Build");
-            mergeScenario.getPushed().setBuild(build());
+            result.setBuild(build());
             Logger.log("\t\tFinish Build");
         }
         //Tests
         if (testScript != null) {
-            if (mergeScenario.getBuild().getState().equals("SUCCESSFUL")) {
+            if (result.getBuild() == null || result.getBuild().getState().equals("SUCCESSFUL")) {
                 Logger.log("\t\tStart Tests");
-                mergeScenario.getPushed().setTests(test());
+                result.setTests(test(null));
                 Logger.log("\t\tFinish Tests");
             } else {
-                Logger.log("\tNO TEST BECAUSE BUILD NOT SUCCESSFUL");
+                Logger.log("\t\tNO TEST BECAUSE BUILD NOT SUCCESSFUL");
             }
         }
-
-
-        //TODO analyse base commit
-//        RevWalk walk = new RevWalk(repository);
-//        walk.setRevFilter(RevFilter.MERGE_BASE);
-//        walk.markStart(commit1);
-//        walk.markStart(commit2);
-//        RevCommit mergeBase = walk.next();
-
-
-        return mergeScenario;
+        return result;
     }
 
     /**
-     * Performs a merge between the two parents of the given commit and checks for confilicts.
+     * Merges the parents of the given commit with all {@link #mergeStrategies} in memory and checks out the merge of
+     * the first strategy like a merge in the working tree, i.e. as a new commit with both parents.
+     * If the merge did not succeed, the first parent is checked out.
      * Changes the state of the local repo!
      *
+     * @param mergeCommit   commit, which merge should be performed
+     * @param mergeScenario receives the analysis of the merges: conflicts
+     * @return true if the merged tree is checked out, false if the first parent is checked out instead
+     */
+    boolean merge(RevCommit mergeCommit, MergeScenario mergeScenario) {
+        long start = System.nanoTime();
+        ObjectId tree = mergeInMemory(mergeCommit, mergeScenario);
+        boolean checkedOut = tree != null && checkoutMerge(mergeCommit, tree);
+        if (!checkedOut) {
+            checkout(mergeCommit.getParent(0).getName());
+        }
+        Metrics.record("merge", start);
+        return checkedOut;
+    }
+
+    /**
+     * Performs a merge between the two parents of the given commit in memory and checks for conflicts.
+     * In contrast to {@link #merge(RevCommit, MergeScenario)} neither the working tree nor the index of the local repo
+     * is touched. Only the first of the {@link #mergeStrategies} is used.
+     *
      * @param mergeCommit commit, which merge should be performed
      * @return analysis of the merge: conflicts
      */
-    private Merge merge(RevCommit mergeCommit) {
+    Merge mergeInMemory(RevCommit mergeCommit) {
+        Merge merge = new Merge();
+        mergeInMemory(mergeCommit, merge);
+        return merge;
+    }
+
+    /**
+     * Performs a merge between the two parents of the given commit in memory with the first of the
+     * {@link #mergeStrategies}, see {@link #mergeInMemory(RevCommit)}. The merged tree is written to the local repo.
+     *
+     * @param mergeCommit commit, which merge should be performed
+     * @param merge       receives the analysis of the merge
+     * @return ID of the merged tree, null if the merge did not succeed
+     */
+    ObjectId mergeInMemory(RevCommit mergeCommit, Merge merge) {
+        try (MergeInput input = new MergeInput(localRepo, mergeCommit)) {
+            return merge(input, getMergeStrategies().get(0), merge);
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+            merge.setState("IO Exception");
+            return null;
+        }
+    }
+
+    /**
+     * Performs a merge between the two parents of the given commit in memory with all {@link #mergeStrategies}.
+     * The parents are loaded once for all strategies. The merge of the first strategy is the merge of the scenario,
+     * the merges of the other strategies are recorded for comparison.
+     * A scenario which is merged already, e.g. by {@link #premerge(RevCommit)}, is not merged again.
+     *
+     * @param mergeCommit   commit, which merge should be performed
+     * @param mergeScenario receives the analysis of the merges
+     * @return ID of the tree merged by the first strategy, null if the merge did not succeed
+     */
+    ObjectId mergeInMemory(RevCommit mergeCommit, MergeScenario mergeScenario) {
+        if (mergeScenario.getMerge().getState() != null) {
+            String tree = mergeScenario.getMerge().getTree();
+            return tree != null ? ObjectId.fromString(tree) : null;
+        }
+        List<MergeStrategy> strategies = getMergeStrategies();
         Merge merge = new Merge();
+        mergeScenario.setMerge(merge);
+        try (MergeInput input = new MergeInput(localRepo, mergeCommit)) {
+            ObjectId tree = merge(input, strategies.get(0), merge);
+            if (strategies.size() > 1) {
+                List<Merge> strategyMerges = new ArrayList<>(strategies.size() - 1);
+                for (MergeStrategy strategy : strategies.subList(1, strategies.size())) {
+                    Merge strategyMerge = new Merge();
+                    merge(input, strategy, strategyMerge);
+                    strategyMerges.add(strategyMerge);
+                }
+                mergeScenario.setStrategyMerges(strategyMerges);
+            }
+            return tree;
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+            merge.setState("IO Exception");
+            return null;
+        }
+    }
+
+    private ObjectId merge(MergeInput input, MergeStrategy strategy, Merge merge) {
+        if (mergeStrategies != null) {
+            merge.setStrategy(strategy.getName());
+        }
+        long start = System.nanoTime();
         try {
-            git.checkout().setName(mergeCommit.getParents()[0].getName()).call();
-            MergeResult mergeResult = git.merge().include(mergeCommit.getParents()[1]).call();
-            merge.setState(mergeResult.getMergeStatus().name());
-
-            if (mergeResult.getMergeStatus().equals(MergeResult.MergeStatus.CONFLICTING)) {
-                Set<String> keySet = mergeResult.getConflicts().keySet();
-                Set<String> conflicts = new HashSet<>(keySet);
-                merge.setConflicts(conflicts);
+            ObjectId tree = strategy.merge(input, merge);
+            if (tree != null) {
+                merge.setTree(tree.getName());
             }
-        } catch (GitAPIException e) {
-            Logger.log(e.getMessage());
-            merge.setState("GitAPI Exception");
+            return tree;
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, strategy.getName() + ": " + e.getMessage());
+            merge.setState("IO Exception");
+            return null;
+        } finally {
+            Metrics.record(strategy == getMergeStrategies().get(0) ? "merge.memory" : "merge." + strategy.getName(),
+                    start);
         }
+    }
 
-        return merge;
+    /**
+     * Checks out the remerge of the given merge, whose tree was merged by the project this worker belongs to.
+     * A snapshot worker shares the repository of that project and a clone refers to its objects, so the tree
+     * is checked out without merging again.
+     *
+     * @param mergeCommit commit, which merge should be performed
+     * @param treeID      ID of the merged tree
+     * @return true if the merge is checked out
+     */
+    boolean checkoutRemerge(RevCommit mergeCommit, String treeID) {
+        return checkoutMerge(mergeCommit, ObjectId.fromString(treeID));
+    }
+
+    /**
+     * Checks out a merged tree as a new commit with the parents of the given merge, or materializes the tree
+     * for a snapshot worker.
+     *
+     * @param mergeCommit merge whose parents were merged
+     * @param tree        merged tree
+     * @return true if the tree is checked out
+     */
+    private boolean checkoutMerge(RevCommit mergeCommit, ObjectId tree) {
+        if (materializer != null) {
+            return materialize(tree);
+        }
+        try (ObjectInserter inserter = localRepo.newObjectInserter()) {
+            PersonIdent ident = new PersonIdent(localRepo);
+            CommitBuilder commit = new CommitBuilder();
+            commit.setTreeId(tree);
+            commit.setParentIds(mergeCommit.getParent(0), mergeCommit.getParent(1));
+            commit.setAuthor(ident);
+            commit.setCommitter(ident);
+            commit.setMessage("Remerge of " + mergeCommit.getName());
+            ObjectId commitID = inserter.insert(commit);
+            inserter.flush();
+            return workingTree.checkout(commitID.getName());
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Without build- and test-script only the merge itself has to be analysed,
+     * which can be done without any checkout.
+     *
+     * @return true if neither a build- nor a test-script is set
+     */
+    boolean isConflictDetectionOnly() {
+        return buildScript == null && testScript == null;
     }
 
     /**
@@ -393,81 +1411,222 @@ class Project {
      *
      * @return analysis of the build: state (success/fail), runtime
      */
-    private Build build() {
-        Process p2;
-        Build build = new Build();
+    Build build() {
+        //Build tools may change tracked files
+        markDirty();
+        long start = System.nanoTime();
+        Build build = buildUntimed();
+        Metrics.record("build", start);
+        Metrics.increment("builds." + build.getState().toLowerCase().replace(' ', '_'));
+        return build;
+    }
+
+    private Build buildUntimed() {
+        if (gradleArguments != null) {
+            return getGradleExecutor().build(buildTimeout);
+        }
+        BuildOutputParser parser = new BuildOutputParser();
+        Build build;
         try {
-            String completeCommand = buildScript + " " + localPath;
-            p2 = Runtime.getRuntime().exec(completeCommand);
-            p2.waitFor();
-            String buildMessage = org.apache.commons.io.IOUtils.toString(p2.getInputStream());
-
-            //TODO generalize
-            //Handle Build Message
-            build.setState("UNKNOWN");
-            if (buildMessage.contains("NO BUILD POSSIBLE")) {
-                build.setState("NO BUILD POSSIBLE");
-            } else {
-                if (buildMessage.contains("BUILD SUCCESSFUL")) {
-                    build.setState("SUCCESSFUL");
-                }
-                if (buildMessage.contains("BUILD FAILED")) {
-                    build.setState("FAILED");
-                }
-            }
-            //Read Runtime
-            if (buildMessage.contains("Total time")) {
-                String rawTime = buildMessage.substring(buildMessage.lastIndexOf("Total time: ") + 12);
-                build.setRuntime(Double.parseDouble(rawTime.split(" ")[0]));
+            ProcessRunner.Result result = new ProcessRunner(buildScript, buildPath)
+                    .setTimeout(buildTimeout)
+                    .setCpuLimit(cpuLimitSeconds)
+                    .setMemoryLimit(memoryLimitKb)
+                    .onOutput(parser)
+                    .run();
+            build = parser.getBuild();
+            if (result.isTimedOut()) {
+                Logger.log(Logger.Level.WARN, "\t\tBuild aborted after " + buildTimeout + "s");
+                build.setState("TIMEOUT");
+            } else if (build.getState().equals("UNKNOWN")) {
+                Logger.log(Logger.Level.WARN, "\t\tUnknown build result, exit code " + result.getExitCode());
+                result.getErrorTail().forEach(line -> Logger.log(Logger.Level.WARN, "\t\t" + line));
             }
         } catch (IOException e) {
+            build = new Build();
             build.setState("IO Exception");
-            Logger.log(e.getMessage());
+            Logger.log(Logger.Level.WARN, e.getMessage());
         } catch (InterruptedException e) {
+            build = new Build();
             build.setState("Interrupted Exception");
-            Logger.log(e.getMessage());
+            Logger.log(Logger.Level.WARN, e.getMessage());
         }
         return build;
     }
 
-    private Tests test() {
+    /**
+     * Runs the tests of the remerge in the working tree which are affected by the changes to its parents.
+     * Tests not affected by the changes to a parent are recorded as inherited.
+     * If the effect of a change is unknown, all tests are run and the {@link #testSelector} learns from the results.
+     *
+     * @param mergeScenario merge scenario whose parents are analysed already
+     * @return analysis of the tests
+     */
+    private Tests testSelected(MergeScenario mergeScenario) {
+        Tests parent1 = mergeScenario.getParent1().getTests();
+        Tests parent2 = mergeScenario.getParent2().getTests();
+        if (parent1 == null || parent2 == null || parent1.getState() != null || parent2.getState() != null) {
+            Logger.log("\t\tRun all tests, the parents were not tested");
+            return test(null);
+        }
+        Set<String> changed1;
+        Set<String> changed2;
+        try (RevWalk walk = new RevWalk(localRepo)) {
+            ObjectId remerge = walk.parseCommit(localRepo.resolve(Constants.HEAD)).getTree();
+            changed1 = TestSelector.changedFiles(localRepo,
+                    walk.parseCommit(ObjectId.fromString(mergeScenario.getParent1().getCommitID())).getTree(), remerge);
+            changed2 = TestSelector.changedFiles(localRepo,
+                    walk.parseCommit(ObjectId.fromString(mergeScenario.getParent2().getCommitID())).getTree(), remerge);
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+            return test(null);
+        }
+        Set<String> classes1 = TestSelector.testClasses(parent1);
+        Set<String> classes2 = TestSelector.testClasses(parent2);
+        Set<String> affected1 = testSelector.affected(changed1, classes1);
+        Set<String> affected2 = testSelector.affected(changed2, classes2);
+        if (affected1 == null || affected2 == null) {
+            Logger.log("\t\tRun all tests, the effect of the changes is unknown");
+            Tests tests = test(null);
+            if (tests.getState() == null) {
+                testSelector.learn(changed1, parent1, tests);
+                testSelector.learn(changed2, parent2, tests);
+            }
+            return tests;
+        }
+
+        //A test class not affected by the changes to a parent has the same result as on that parent
+        Set<String> inherited1 = new HashSet<>(classes1);
+        inherited1.removeAll(affected1);
+        Set<String> inherited2 = new HashSet<>(classes2);
+        inherited2.removeAll(affected2);
+        inherited2.removeAll(inherited1);
+        Set<String> selected = new HashSet<>(classes1);
+        selected.addAll(classes2);
+        selected.removeAll(inherited1);
+        selected.removeAll(inherited2);
+
+        Logger.log("\t\tRun " + selected.size() + " of "
+                + (selected.size() + inherited1.size() + inherited2.size()) + " test classes");
+        Tests tests = selected.isEmpty() ? new Tests() : test(TestSelector.join(selected));
+        if (tests.getState() != null) {
+            return tests;
+        }
+        for (int i = 0; i < parent1.getTotal(); i++) {
+            if (inherited1.contains(TestSelector.testClass(parent1.getName(i)))) {
+                tests.addTestCase(parent1.getNameId(i), TestResult.INHERITED, Float.NaN);
+            }
+        }
+        for (int i = 0; i < parent2.getTotal(); i++) {
+            if (inherited2.contains(TestSelector.testClass(parent2.getName(i)))) {
+                tests.addTestCase(parent2.getNameId(i), TestResult.INHERITED, Float.NaN);
+            }
+        }
+        tests.trimToSize();
+        return tests;
+    }
+
+    /**
+     * Runs the tests in the working tree according to a test-script, which has been set previously.
+     *
+     * @param testClasses comma separated test classes passed to the test-script, null to run all tests
+     * @return analysis of the tests
+     */
+    Tests test(String testClasses) {
+        markDirty();
+        if (gradleArguments != null) {
+            long start = System.nanoTime();
+            Tests tests = getGradleExecutor().test(testTimeout, testClasses);
+            Metrics.record("test", start);
+            return tests;
+        }
         Tests tests = new Tests();
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
         try {
-            Process p = Runtime.getRuntime().exec(testScript + " " + localPath);
+            ProcessRunner runner = (testClasses == null
+                    ? new ProcessRunner(testScript, buildPath) : new ProcessRunner(testScript, buildPath, testClasses))
+                    .setTimeout(testTimeout)
+                    .setCpuLimit(cpuLimitSeconds)
+                    .setMemoryLimit(memoryLimitKb);
             //Log test message
-            if(logTestMessage) {
-                String line;
-                BufferedReader input = new BufferedReader(new InputStreamReader(p.getInputStream()));
-                while ((line = input.readLine()) != null) {
-                    Logger.log("\t\t" + line);
-                }
-                input.close();
-
-                //Include message to xml file
-//                tests.message = org.apache.commons.io.IOUtils.toString(p.getInputStream());
+            if (logTestMessage) {
+                runner.onOutput(line -> Logger.log(Logger.Level.DEBUG, "\t\t" + line));
+            }
+            boolean timedOut = runner.run().isTimedOut();
+            Metrics.record("test", startNanos);
+            if (timedOut) {
+                //Reports of an aborted run are incomplete or outdated
+                Logger.log(Logger.Level.WARN, "\t\tTests aborted after " + testTimeout + "s");
+                tests.setState("TIMEOUT");
+                return tests;
             }
 
-            p.waitFor();
-            FileReader fileReader = new FileReader(localPath + "/build/reports/summary.csv");
-            for (CSVRecord record : CSVFormat.EXCEL.withHeader().parse(fileReader)) {
-                tests.addTestCase(record.get("Test"), record.get("Result"), record.get("Duration"));
+            long parseStart = System.nanoTime();
+            //A summary written by the collectResults task of older test-scripts is still supported
+            File summary = new File(buildPath + "/build/reports/summary.csv");
+            if (summary.isFile() && summary.lastModified() >= start / 1000 * 1000) {
+                try (FileReader fileReader = new FileReader(summary)) {
+                    for (CSVRecord record : CSVFormat.EXCEL.withHeader().parse(fileReader)) {
+                        tests.addTestCase(record.get("Test"), record.get("Result"), record.get("Duration"));
+                    }
+                }
+            } else {
+                for (JUnitReportParser.TestResult result : JUnitReportParser.parse(Paths.get(buildPath), start)) {
+                    tests.addTestCase(result.name, result.result, result.duration);
+                }
             }
+            tests.trimToSize();
+            Metrics.record("parse", parseStart);
             return tests;
         } catch (IOException | InterruptedException e) {
-            Logger.log(e.getMessage());
+            Logger.log(Logger.Level.WARN, e.getMessage());
         }
         return tests;
     }
 
     /**
-     * Resets the repo.
+     * Marks the working tree as possibly changed. Snapshots are replaced completely anyway.
+     */
+    private void markDirty() {
+        if (workingTree != null) {
+            workingTree.markDirty();
+        }
+    }
+
+    /**
+     * Checks out the default branch of the repo, e.g. master, and resets changes to the working tree.
      */
-    private void checkoutMaster() {
+    void checkoutDefaultBranch() {
+        workingTree.checkoutDefaultBranch();
+    }
+
+    /**
+     * Checks out a commit with a detached HEAD, or materializes its tree for a snapshot worker.
+     *
+     * @param commitID ID of the commit
+     * @return true if the commit is checked out completely
+     */
+    boolean checkout(String commitID) {
+        if (materializer != null) {
+            return materialize(ObjectId.fromString(commitID));
+        }
+        return workingTree.checkout(commitID);
+    }
+
+    /**
+     * Replaces the snapshot in the {@link #buildPath} with the given tree.
+     *
+     * @param treeID commit or tree to materialize
+     * @return true if the tree is materialized completely
+     */
+    private boolean materialize(ObjectId treeID) {
         try {
-            git.reset().setMode(ResetCommand.ResetType.HARD).setRef("master").call();
-            git.checkout().setForce(true).setName("master").call();
-        } catch (GitAPIException e) {
-            Logger.log(e.getMessage());
+            materializer.materialize(treeID, new File(buildPath));
+            return true;
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+            return false;
         }
     }
 }
@@ -0,0 +1,117 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.data.MergeScenario;
+import de.fosd.merge_history_analyser.util.Logger;
+import de.fosd.merge_history_analyser.util.RecordCodec;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyses merge scenarios handed out by a {@link Coordinator} in another process.
+ * The worker uses the repository, scripts and result store of its own {@link Project}.
+ *
+ * @author Martin Gruber
+ */
+class RemoteWorker {
+
+    /**
+     * Time to wait for the coordinator to start
+     */
+    private static final long CONNECT_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Project project;
+
+    private final String host;
+
+    private final int port;
+
+    private final RecordCodec codec = new RecordCodec();
+
+    /**
+     * @param project project whose repository is used, should be a clone of the repository of the coordinator
+     * @param host    host of the coordinator
+     * @param port    port of the coordinator
+     */
+    RemoteWorker(Project project, String host, int port) {
+        this.project = project;
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Requests and analyses jobs until the coordinator has no jobs left.
+     *
+     * @throws IOException if the connection to the coordinator fails
+     */
+    void run() throws IOException {
+        try (Socket socket = connect();
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            Logger.log("Connected to coordinator " + host + ":" + port);
+            while (true) {
+                writer.write("NEXT\n");
+                writer.flush();
+                String line = reader.readLine();
+                if (line == null || line.equals("DONE")) {
+                    break;
+                } else if (line.startsWith("WAIT ")) {
+                    Thread.sleep(Long.parseLong(line.substring("WAIT ".length())));
+                } else if (line.startsWith("JOB ")) {
+                    String commitID = line.substring("JOB ".length());
+                    writer.write(analyse(commitID));
+                    writer.write('\n');
+                    writer.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+        Logger.log("No jobs left");
+    }
+
+    private String analyse(String commitID) {
+        Logger.log("Working on " + commitID);
+        try {
+            RevCommit mergeCommit = project.parseMergeCommit(commitID);
+            if (mergeCommit == null) {
+                return "FAILED " + commitID;
+            }
+            MergeScenario mergeScenario = project.analyseMergeScenarioStored(mergeCommit);
+            Logger.log("Finished");
+            return "RESULT " + commitID + "\t" + codec.encode(mergeScenario);
+        } catch (RuntimeException e) {
+            Logger.log(Logger.Level.ERROR, e.toString());
+            return "FAILED " + commitID;
+        }
+    }
+
+    private Socket connect() throws IOException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                return new Socket(host, port);
+            } catch (ConnectException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+}
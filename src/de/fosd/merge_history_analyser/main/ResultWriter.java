@@ -0,0 +1,23 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.data.MergeScenario;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes analysed merge scenarios to disk as soon as they are finished,
+ * so only one merge scenario at a time has to be kept in memory.
+ *
+ * @author Martin Gruber
+ */
+interface ResultWriter extends Closeable {
+
+    /**
+     * Appends a finished merge scenario to the output.
+     *
+     * @param mergeScenario analysed merge scenario
+     * @throws IOException if the output can not be written
+     */
+    void write(MergeScenario mergeScenario) throws IOException;
+}
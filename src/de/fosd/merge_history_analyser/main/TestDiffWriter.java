@@ -0,0 +1,61 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.data.MergeScenario;
+import de.fosd.merge_history_analyser.data.TestDiff;
+import de.fosd.merge_history_analyser.data.TestResult;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+
+/**
+ * Writes the {@link TestDiff} of every merge scenario to a CSV file and passes the merge scenario on to
+ * another {@link ResultWriter}. Every changed test is one row with the results on the remerge, both parents
+ * and the pushed commit, so the results do not have to be loaded again to find changed tests.
+ *
+ * @author Martin Gruber
+ */
+class TestDiffWriter implements ResultWriter {
+
+    private final ResultWriter resultWriter;
+
+    private final CSVPrinter printer;
+
+    /**
+     * @param resultWriter writer of the complete results
+     * @param filename     file the changed tests are written to
+     * @throws IOException if the file can not be opened
+     */
+    TestDiffWriter(ResultWriter resultWriter, String filename) throws IOException {
+        this.resultWriter = resultWriter;
+        printer = new CSVPrinter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), "utf-8")),
+                CSVFormat.EXCEL.withHeader("Merge", "Test", "Change", "Remerge", "Parent1", "Parent2", "Pushed"));
+    }
+
+    @Override
+    public void write(MergeScenario mergeScenario) throws IOException {
+        resultWriter.write(mergeScenario);
+        for (TestDiff.Entry entry : TestDiff.compute(mergeScenario).getEntries()) {
+            printer.printRecord(mergeScenario.getCommitID(), entry.getName(), entry.getChange(),
+                    label(entry.getRemerge()), label(entry.getParent1()), label(entry.getParent2()),
+                    label(entry.getPushed()));
+        }
+        printer.flush();
+    }
+
+    private static String label(TestResult result) {
+        return result == null ? "" : result.getLabel();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            resultWriter.close();
+        } finally {
+            printer.close();
+        }
+    }
+}
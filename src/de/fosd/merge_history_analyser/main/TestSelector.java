@@ -0,0 +1,232 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.data.TestResult;
+import de.fosd.merge_history_analyser.data.Tests;
+import de.fosd.merge_history_analyser.util.Logger;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Selects the test classes affected by the changes between the remerge and its parents.
+ * <p>
+ * A test class is affected by a changed file if it is the source of the test class, if the test class is named
+ * after the changed class (e.g. FooTest for Foo.java) or if the result of the test class changed together with the
+ * file in an earlier run. The last mapping is learned from every full test run and kept in a file for later runs.
+ * If a file changed that was never seen in a full test run, all tests are run.
+ * <p>
+ * A test class not affected by the changes to one of the parents has the same result as on that parent,
+ * so it does not have to be run again.
+ *
+ * @author Martin Gruber
+ */
+class TestSelector {
+
+    private final File mappingFile;
+
+    /**
+     * Changed file -> test classes whose result changed together with the file, empty if none did
+     */
+    private final Map<String, Set<String>> mapping = new HashMap<>();
+
+    /**
+     * @param mappingFile file the learned mapping is read from and written to
+     */
+    TestSelector(File mappingFile) {
+        this.mappingFile = mappingFile;
+        if (mappingFile.isFile()) {
+            load();
+        }
+    }
+
+    private void load() {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(mappingFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                Set<String> testClasses = new HashSet<>();
+                for (String testClass : line.substring(tab + 1).split(",")) {
+                    if (!testClass.isEmpty()) {
+                        testClasses.add(testClass);
+                    }
+                }
+                mapping.put(line.substring(0, tab), testClasses);
+            }
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, "Could not read test mapping: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the learned mapping, so it can be used by later runs.
+     */
+    synchronized void save() {
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(mappingFile), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Set<String>> entry : new TreeMap<>(mapping).entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(String.join(",", entry.getValue()));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, "Could not write test mapping: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lists the paths which differ between two trees, including both paths of renamed files.
+     *
+     * @param repository repository containing the trees
+     * @param oldTree    tree of the parent
+     * @param newTree    tree of the remerge
+     * @return changed paths
+     * @throws IOException if a tree can not be read
+     */
+    static Set<String> changedFiles(Repository repository, ObjectId oldTree, ObjectId newTree) throws IOException {
+        Set<String> changed = new LinkedHashSet<>();
+        try (DiffFormatter formatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            formatter.setRepository(repository);
+            for (DiffEntry entry : formatter.scan(oldTree, newTree)) {
+                if (!entry.getOldPath().equals(DiffEntry.DEV_NULL)) {
+                    changed.add(entry.getOldPath());
+                }
+                if (!entry.getNewPath().equals(DiffEntry.DEV_NULL)) {
+                    changed.add(entry.getNewPath());
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Finds the test classes affected by the given changes.
+     *
+     * @param changedFiles paths changed compared to a parent
+     * @param testClasses  test classes of the parent
+     * @return affected test classes, null if the effect of a change is unknown and all tests have to be run,
+     * e.g. for a file never seen before or a new test class
+     */
+    synchronized Set<String> affected(Set<String> changedFiles, Set<String> testClasses) {
+        Set<String> affected = new HashSet<>();
+        for (String file : changedFiles) {
+            Set<String> learned = mapping.get(file);
+            if (learned == null) {
+                return null;
+            }
+            affected.addAll(learned);
+            String className = className(file);
+            if (className != null) {
+                boolean knownTest = false;
+                for (String testClass : testClasses) {
+                    String simpleName = testClass.substring(testClass.lastIndexOf('.') + 1);
+                    if (file.endsWith(testClass.replace('.', '/') + ".java")) {
+                        knownTest = true;
+                        affected.add(testClass);
+                    } else if (simpleName.equals(className + "Test") || simpleName.equals(className + "Tests")
+                            || simpleName.equals("Test" + className)) {
+                        affected.add(testClass);
+                    }
+                }
+                //A new test class is not known by its name yet
+                if (!knownTest && (className.startsWith("Test") || className.endsWith("Test")
+                        || className.endsWith("Tests"))) {
+                    return null;
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Learns from a full test run which test classes changed their result together with the changed files.
+     *
+     * @param changedFiles paths changed compared to the parent
+     * @param parent       test results of the parent
+     * @param remerge      test results of the remerge
+     */
+    synchronized void learn(Set<String> changedFiles, Tests parent, Tests remerge) {
+        Map<Integer, TestResult> parentResults = new HashMap<>();
+        for (int i = 0; i < parent.getTotal(); i++) {
+            parentResults.put(parent.getNameId(i), parent.getResult(i));
+        }
+        Set<String> changedClasses = new HashSet<>();
+        for (int i = 0; i < remerge.getTotal(); i++) {
+            TestResult parentResult = parentResults.get(remerge.getNameId(i));
+            if (parentResult != null && parentResult != remerge.getResult(i)) {
+                changedClasses.add(testClass(remerge.getName(i)));
+            }
+        }
+        for (String file : changedFiles) {
+            mapping.computeIfAbsent(file, key -> new HashSet<>()).addAll(changedClasses);
+        }
+    }
+
+    /**
+     * @param tests test results, may be null
+     * @return classes of all test cases
+     */
+    static Set<String> testClasses(Tests tests) {
+        if (tests == null) {
+            return Collections.emptySet();
+        }
+        Set<String> testClasses = new HashSet<>();
+        for (int i = 0; i < tests.getTotal(); i++) {
+            testClasses.add(testClass(tests.getName(i)));
+        }
+        return testClasses;
+    }
+
+    /**
+     * @param testName class and method of a test case, e.g. voldemort.FooTest.testBar
+     * @return class of the test case, e.g. voldemort.FooTest
+     */
+    static String testClass(String testName) {
+        int dot = testName.lastIndexOf('.');
+        return dot < 0 ? testName : testName.substring(0, dot);
+    }
+
+    /**
+     * @return simple name of a Java source file, null for other files
+     */
+    private static String className(String file) {
+        if (!file.endsWith(".java")) {
+            return null;
+        }
+        return file.substring(file.lastIndexOf('/') + 1, file.length() - ".java".length());
+    }
+
+    /**
+     * @return test classes as passed to a test-script
+     */
+    static String join(Set<String> testClasses) {
+        String[] sorted = testClasses.toArray(new String[testClasses.size()]);
+        Arrays.sort(sorted);
+        return String.join(",", sorted);
+    }
+}
@@ -0,0 +1,198 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.util.Logger;
+import de.fosd.merge_history_analyser.util.Metrics;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.errors.CheckoutConflictException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryState;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Moves the working tree of a repository from one commit to the next.
+ * <p>
+ * A checkout only writes the files which differ between the current and the target commit. Unchanged files are
+ * recognized by the file stats cached in the index, so they are neither read nor written. Steps which may change
+ * the working tree, e.g. a merge with conflicts or a build, mark it as dirty. Only a dirty working tree is checked
+ * for modified files, and only if there are any, it is reset before the next checkout.
+ * Untracked files, e.g. build outputs, are kept like with {@code git reset --hard}.
+ * <p>
+ * Commits are checked out with a detached HEAD, so no branch is moved.
+ * The branch checked out when the repository was opened is the default branch, which is checked out again at the end.
+ *
+ * @author Martin Gruber
+ */
+class WorkingTree {
+
+    private final Repository repository;
+
+    private final Git git;
+
+    private final String defaultBranch;
+
+    /**
+     * Whether the working tree may differ from HEAD. The state of a repository which was just opened is unknown.
+     */
+    private boolean dirty = true;
+
+    WorkingTree(Repository repository, Git git) {
+        this.repository = repository;
+        this.git = git;
+        this.defaultBranch = findDefaultBranch();
+    }
+
+    /**
+     * The default branch is the branch HEAD points to. If HEAD is detached, e.g. after an aborted run, it is the
+     * branch HEAD of origin points to, else master or the first branch found.
+     *
+     * @return full name of the default branch, e.g. refs/heads/main
+     */
+    private String findDefaultBranch() {
+        try {
+            String head = repository.getFullBranch();
+            if (head != null && head.startsWith(Constants.R_HEADS)) {
+                return head;
+            }
+            Ref originHead = repository.getRef(Constants.R_REMOTES + Constants.DEFAULT_REMOTE_NAME + "/" + Constants.HEAD);
+            if (originHead != null && originHead.isSymbolic()) {
+                String branch = Constants.R_HEADS + Repository.shortenRefName(originHead.getTarget().getName())
+                        .substring(Constants.DEFAULT_REMOTE_NAME.length() + 1);
+                if (repository.getRef(branch) != null) {
+                    return branch;
+                }
+            }
+            if (repository.getRef(Constants.R_HEADS + Constants.MASTER) != null) {
+                return Constants.R_HEADS + Constants.MASTER;
+            }
+            Map<String, Ref> branches = repository.getRefDatabase().getRefs(Constants.R_HEADS);
+            if (!branches.isEmpty()) {
+                return Constants.R_HEADS + branches.keySet().iterator().next();
+            }
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+        }
+        return Constants.R_HEADS + Constants.MASTER;
+    }
+
+    /**
+     * Marks the working tree as possibly changed, so it is checked before the next checkout.
+     */
+    void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Checks out a commit with a detached HEAD.
+     *
+     * @param commitID ID of the commit
+     * @return true if the commit is checked out
+     */
+    boolean checkout(String commitID) {
+        try {
+            return checkout(repository.resolve(commitID), null);
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Checks out the default branch.
+     */
+    void checkoutDefaultBranch() {
+        try {
+            checkout(repository.resolve(defaultBranch), defaultBranch);
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+        }
+    }
+
+    /**
+     * @param commitID commit to check out
+     * @param branch   branch HEAD is linked to, null for a detached HEAD
+     * @return false if there is nothing to check out
+     */
+    private boolean checkout(ObjectId commitID, String branch) throws IOException {
+        if (commitID == null) {
+            Logger.log(Logger.Level.WARN, "Nothing to check out for " + (branch != null ? branch : "commit"));
+            return false;
+        }
+        if (dirty) {
+            clean();
+        }
+        long start = System.nanoTime();
+        try (RevWalk walk = new RevWalk(repository)) {
+            RevCommit target = walk.parseCommit(commitID);
+            ObjectId head = repository.resolve(Constants.HEAD + "^{tree}");
+            try {
+                switchTree(head, target, true);
+            } catch (CheckoutConflictException e) {
+                //Files changed by a step which was not marked as dirty, or untracked files in the way
+                Logger.log(Logger.Level.WARN, "\t\tReset working tree: " + e.getMessage());
+                reset();
+                switchTree(head, target, false);
+            }
+            RefUpdate update = repository.updateRef(Constants.HEAD, branch == null);
+            if (branch == null) {
+                update.setNewObjectId(target);
+                update.forceUpdate();
+            } else {
+                update.link(branch);
+            }
+        }
+        Metrics.record("checkout", start);
+        return true;
+    }
+
+    private void switchTree(ObjectId headTree, RevCommit target, boolean failOnConflict) throws IOException {
+        DirCache index = repository.lockDirCache();
+        try {
+            DirCacheCheckout checkout = headTree == null
+                    ? new DirCacheCheckout(repository, index, target.getTree())
+                    : new DirCacheCheckout(repository, headTree, index, target.getTree());
+            checkout.setFailOnConflict(failOnConflict);
+            checkout.checkout();
+        } finally {
+            index.unlock();
+        }
+    }
+
+    /**
+     * Resets the working tree if it differs from HEAD, e.g. after a merge with conflicts.
+     */
+    private void clean() {
+        try {
+            Status status = git.status().call();
+            //A merge with conflicts also leaves the repository in state MERGING
+            if (status.hasUncommittedChanges() || repository.getRepositoryState() != RepositoryState.SAFE) {
+                reset();
+            }
+            dirty = false;
+        } catch (GitAPIException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+        }
+    }
+
+    private void reset() {
+        long start = System.nanoTime();
+        try {
+            git.reset().setMode(ResetCommand.ResetType.HARD).call();
+        } catch (GitAPIException e) {
+            Logger.log(Logger.Level.WARN, e.getMessage());
+        }
+        Metrics.record("reset", start);
+    }
+}
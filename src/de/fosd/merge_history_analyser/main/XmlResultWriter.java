@@ -0,0 +1,64 @@
+package de.fosd.merge_history_analyser.main;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.PrettyPrintWriter;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+import de.fosd.merge_history_analyser.data.MergeScenario;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes the results as indented XML with the same schema as an XStream serialization of the whole {@link Project}.
+ *
+ * @author Martin Gruber
+ */
+class XmlResultWriter implements ResultWriter {
+
+    private final Writer writer;
+
+    private final PrettyPrintWriter xmlWriter;
+
+    private final XStream xstream;
+
+    XmlResultWriter(String filename, Project project) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), "utf-8"));
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+
+        xstream = new XStream(new StaxDriver());
+        xstream.processAnnotations(Project.class);
+        //Results of commits shared by several merges are written for each merge
+        xstream.setMode(XStream.NO_REFERENCES);
+
+        xmlWriter = new PrettyPrintWriter(writer, "  ".toCharArray());
+        xmlWriter.startNode("Project");
+        addAttribute("name", project.getName());
+        addAttribute("url", project.getRemotePath());
+        addAttribute("buildScript", project.getBuildScript());
+        addAttribute("testScript", project.getTestScript());
+        xmlWriter.flush();
+    }
+
+    private void addAttribute(String name, String value) {
+        if (value != null) {
+            xmlWriter.addAttribute(name, value);
+        }
+    }
+
+    @Override
+    public void write(MergeScenario mergeScenario) throws IOException {
+        xstream.marshal(mergeScenario, xmlWriter);
+        xmlWriter.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        xmlWriter.endNode();
+        xmlWriter.flush();
+        writer.write("\n");
+        writer.close();
+    }
+}
@@ -0,0 +1,215 @@
+package de.fosd.merge_history_analyser.merge;
+
+import de.fosd.merge_history_analyser.data.ConflictDetails;
+import de.fosd.merge_history_analyser.data.ConflictType;
+import de.fosd.merge_history_analyser.data.Merge;
+import de.fosd.merge_history_analyser.util.Logger;
+import de.fosd.merge_history_analyser.util.ProcessRunner;
+import de.fosd.merge_history_analyser.util.Util;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Merges with an external merge tool, e.g. a structured or semistructured merger.
+ * <p>
+ * The tool is called like a merge driver of git: the command is run by the shell for every file changed by both
+ * parents, after %O, %A and %B are replaced by files with the content of the base, the first and the second parent
+ * and %P by the path of the file. The tool writes the merged content to the file given for %A and exits with 0
+ * if there are no conflicts. Files changed by only one parent are taken from that parent, files deleted by one parent
+ * and changed by the other are modify/delete conflicts.
+ * <p>
+ * The conflict chunks of a file merged by the tool are not known, so the conflict details only contain the file
+ * and its type.
+ *
+ * @author Martin Gruber
+ */
+public class ExternalMergeStrategy implements MergeStrategy {
+
+    private static final int BASE = 0;
+
+    private static final int OURS = 1;
+
+    private static final int THEIRS = 2;
+
+    private final String name;
+
+    private final String command;
+
+    /**
+     * Seconds after which the tool is killed and the file is recorded as conflicting, 0 for no limit
+     */
+    private final long timeoutSeconds;
+
+    /**
+     * @param name           name of the strategy in the results
+     * @param command        command run for every file, see {@link ExternalMergeStrategy}
+     * @param timeoutSeconds seconds after which the tool is killed on a file, 0 for no limit
+     */
+    public ExternalMergeStrategy(String name, String command, long timeoutSeconds) {
+        this.name = name;
+        this.command = command;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return name and a hash of the command, so results of another command with the same name are not reused
+     */
+    @Override
+    public String getKey() {
+        return name + "@" + Util.hashStrings(command);
+    }
+
+    @Override
+    public ObjectId merge(MergeInput input, Merge merge) throws IOException {
+        ObjectId trivial = input.mergeTrivial(merge);
+        if (trivial != null) {
+            return trivial;
+        }
+        Set<String> conflicts = new HashSet<>();
+        ConflictDetails details = new ConflictDetails();
+        DirCache result = DirCache.newInCore();
+        DirCacheBuilder builder = result.builder();
+        File directory = Files.createTempDirectory("merge").toFile();
+        try (ObjectInserter inserter = input.getRepository().newObjectInserter();
+             TreeWalk walk = new TreeWalk(input.getReader())) {
+            if (input.getBaseTree() != null) {
+                walk.addTree(input.getBaseTree());
+            } else {
+                walk.addTree(new EmptyTreeIterator());
+            }
+            walk.addTree(input.getOurs().getTree());
+            walk.addTree(input.getTheirs().getTree());
+            walk.setRecursive(true);
+            while (walk.next()) {
+                String path = walk.getPathString();
+                boolean oursChanged = changed(walk, OURS);
+                boolean theirsChanged = changed(walk, THEIRS);
+                boolean sameChange = walk.getRawMode(OURS) == walk.getRawMode(THEIRS) && walk.idEqual(OURS, THEIRS);
+                if (!theirsChanged || sameChange) {
+                    add(builder, walk, OURS);
+                } else if (!oursChanged) {
+                    add(builder, walk, THEIRS);
+                } else if (walk.getRawMode(OURS) == 0 || walk.getRawMode(THEIRS) == 0) {
+                    conflicts.add(path);
+                    details.addFile(path, ConflictType.MODIFY_DELETE);
+                } else if (!isFile(walk, OURS) || !isFile(walk, THEIRS)) {
+                    //e.g. a file replaced by a submodule
+                    conflicts.add(path);
+                    details.addFile(path, ConflictType.CONTENT);
+                } else {
+                    ObjectId merged = mergeFile(input, walk, directory, inserter);
+                    if (merged != null) {
+                        DirCacheEntry entry = new DirCacheEntry(path);
+                        entry.setFileMode(walk.getFileMode(OURS));
+                        entry.setObjectId(merged);
+                        builder.add(entry);
+                    } else {
+                        conflicts.add(path);
+                        details.addFile(path, walk.getRawMode(BASE) == 0 ? ConflictType.ADD_ADD : ConflictType.CONTENT);
+                    }
+                }
+            }
+            if (!conflicts.isEmpty()) {
+                merge.setState(MergeResult.MergeStatus.CONFLICTING.name());
+                merge.setConflicts(conflicts);
+                details.trimToSize();
+                merge.setConflictDetails(details);
+                return null;
+            }
+            builder.finish();
+            ObjectId tree = result.writeTree(inserter);
+            inserter.flush();
+            merge.setState(MergeResult.MergeStatus.MERGED.name());
+            return tree;
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    private static boolean changed(TreeWalk walk, int parent) {
+        return walk.getRawMode(parent) != walk.getRawMode(BASE) || !walk.idEqual(parent, BASE);
+    }
+
+    private static boolean isFile(TreeWalk walk, int parent) {
+        return FileMode.REGULAR_FILE.equals(walk.getRawMode(parent))
+                || FileMode.EXECUTABLE_FILE.equals(walk.getRawMode(parent));
+    }
+
+    private static void add(DirCacheBuilder builder, TreeWalk walk, int parent) {
+        if (walk.getRawMode(parent) == 0) {
+            //Deleted
+            return;
+        }
+        DirCacheEntry entry = new DirCacheEntry(walk.getRawPath());
+        entry.setFileMode(walk.getFileMode(parent));
+        entry.setObjectId(walk.getObjectId(parent));
+        builder.add(entry);
+    }
+
+    /**
+     * Runs the tool on the current file of the walk.
+     *
+     * @return ID of the merged content, null if the tool reported conflicts
+     */
+    private ObjectId mergeFile(MergeInput input, TreeWalk walk, File directory, ObjectInserter inserter)
+            throws IOException {
+        File base = write(input, walk, BASE, new File(directory, "base"));
+        File ours = write(input, walk, OURS, new File(directory, "ours"));
+        File theirs = write(input, walk, THEIRS, new File(directory, "theirs"));
+        String call = command.replace("%O", quote(base.getPath()))
+                .replace("%A", quote(ours.getPath()))
+                .replace("%B", quote(theirs.getPath()))
+                .replace("%P", quote(walk.getPathString()));
+        try {
+            ProcessRunner.Result result = new ProcessRunner("sh", "-c", call).setTimeout(timeoutSeconds).run();
+            if (result.isTimedOut()) {
+                Logger.log(Logger.Level.WARN, "\t\t" + name + " aborted on " + walk.getPathString());
+                return null;
+            }
+            if (result.getExitCode() != 0) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while merging " + walk.getPathString(), e);
+        }
+        try (InputStream merged = Files.newInputStream(ours.toPath())) {
+            return inserter.insert(Constants.OBJ_BLOB, ours.length(), merged);
+        }
+    }
+
+    private static File write(MergeInput input, TreeWalk walk, int version, File file) throws IOException {
+        if (walk.getRawMode(version) == 0) {
+            //Added by both parents, the base is empty
+            Files.write(file.toPath(), new byte[0]);
+        } else {
+            FileUtils.copyInputStreamToFile(input.getReader().open(walk.getObjectId(version)).openStream(), file);
+        }
+        return file;
+    }
+
+    private static String quote(String argument) {
+        return "'" + argument.replace("'", "'\\''") + "'";
+    }
+}
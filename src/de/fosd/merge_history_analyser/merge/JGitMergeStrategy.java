@@ -0,0 +1,110 @@
+package de.fosd.merge_history_analyser.merge;
+
+import de.fosd.merge_history_analyser.data.ConflictDetails;
+import de.fosd.merge_history_analyser.data.ConflictType;
+import de.fosd.merge_history_analyser.data.Merge;
+import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.Sequence;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.merge.MergeChunk;
+import org.eclipse.jgit.merge.Merger;
+import org.eclipse.jgit.merge.ResolveMerger;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Merges with a merge strategy of JGit: recursive, resolve, ours or theirs.
+ * The results are the same as for a merge in the working tree with the same strategy.
+ *
+ * @author Martin Gruber
+ */
+public class JGitMergeStrategy implements MergeStrategy {
+
+    private final org.eclipse.jgit.merge.MergeStrategy strategy;
+
+    /**
+     * @param strategy merge strategy of JGit
+     */
+    public JGitMergeStrategy(org.eclipse.jgit.merge.MergeStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Override
+    public String getName() {
+        return strategy.getName();
+    }
+
+    @Override
+    public ObjectId merge(MergeInput input, Merge merge) throws IOException {
+        ObjectId trivial = input.mergeTrivial(merge);
+        if (trivial != null) {
+            return trivial;
+        }
+        Merger merger = strategy.newMerger(input.getRepository(), true);
+        if (merger.merge(input.getOurs(), input.getTheirs())) {
+            merge.setState(MergeResult.MergeStatus.MERGED.name());
+            return merger.getResultTreeId();
+        }
+        if (!(merger instanceof ResolveMerger) || ((ResolveMerger) merger).getFailingPaths() != null) {
+            merge.setState(MergeResult.MergeStatus.FAILED.name());
+            return null;
+        }
+        merge.setState(MergeResult.MergeStatus.CONFLICTING.name());
+        Set<String> conflicts = new HashSet<>();
+        ((ResolveMerger) merger).getMergeResults().forEach((path, result) -> {
+            if (result.containsConflicts()) {
+                conflicts.add(path);
+            }
+        });
+        merge.setConflicts(conflicts);
+        merge.setConflictDetails(conflictDetails((ResolveMerger) merger));
+        return null;
+    }
+
+    /**
+     * Reads the conflict chunks of all conflicting files from the content merges of a merger.
+     * A file missing in the base or in a parent is read as empty text, which tells the type of the conflict.
+     *
+     * @param merger merger after a merge with conflicts
+     * @return conflicting files ordered by path
+     */
+    private static ConflictDetails conflictDetails(ResolveMerger merger) {
+        ConflictDetails details = new ConflictDetails();
+        Map<String, org.eclipse.jgit.merge.MergeResult<? extends Sequence>> results =
+                new TreeMap<>(merger.getMergeResults());
+        for (Map.Entry<String, org.eclipse.jgit.merge.MergeResult<? extends Sequence>> entry : results.entrySet()) {
+            org.eclipse.jgit.merge.MergeResult<? extends Sequence> result = entry.getValue();
+            if (!result.containsConflicts()) {
+                continue;
+            }
+            List<? extends Sequence> sequences = result.getSequences();
+            ConflictType type = ConflictType.CONTENT;
+            if (sequences.size() == 3 && sequences.get(0) == RawText.EMPTY_TEXT) {
+                type = ConflictType.ADD_ADD;
+            } else if (sequences.size() == 3
+                    && (sequences.get(1) == RawText.EMPTY_TEXT || sequences.get(2) == RawText.EMPTY_TEXT)) {
+                type = ConflictType.MODIFY_DELETE;
+            }
+            details.addFile(entry.getKey(), type);
+            //A conflict is a range of the first parent followed by a range of the second parent
+            int begin1 = 0;
+            int end1 = 0;
+            for (MergeChunk chunk : result) {
+                if (chunk.getConflictState() == MergeChunk.ConflictState.FIRST_CONFLICTING_RANGE) {
+                    begin1 = chunk.getBegin();
+                    end1 = chunk.getEnd();
+                } else if (chunk.getConflictState() == MergeChunk.ConflictState.NEXT_CONFLICTING_RANGE) {
+                    details.addChunk(begin1, end1, chunk.getBegin(), chunk.getEnd());
+                }
+            }
+        }
+        details.trimToSize();
+        return details;
+    }
+}
@@ -0,0 +1,117 @@
+package de.fosd.merge_history_analyser.merge;
+
+import de.fosd.merge_history_analyser.data.Merge;
+import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+
+import java.io.IOException;
+
+/**
+ * The parents of a merge scenario and their merge base, loaded once for all {@link MergeStrategy strategies}.
+ * Whether the merge is trivial, i.e. one parent contains the other, does not depend on the strategy and is
+ * determined here as well. The mergers of JGit read through readers of their own, only
+ * {@link ExternalMergeStrategy external tools} use the reader given here.
+ *
+ * @author Martin Gruber
+ */
+public class MergeInput implements AutoCloseable {
+
+    private final Repository repository;
+
+    private final ObjectReader reader;
+
+    private final RevCommit ours;
+
+    private final RevCommit theirs;
+
+    /**
+     * First merge base of the parents, null if they have none
+     */
+    private final RevCommit base;
+
+    private final boolean upToDate;
+
+    private final boolean fastForward;
+
+    /**
+     * @param repository  repository containing the merge
+     * @param mergeCommit merge whose parents are merged again
+     * @throws IOException if the parents can not be read
+     */
+    public MergeInput(Repository repository, RevCommit mergeCommit) throws IOException {
+        this.repository = repository;
+        reader = repository.newObjectReader();
+        try (RevWalk walk = new RevWalk(reader)) {
+            ours = walk.parseCommit(mergeCommit.getParent(0));
+            theirs = walk.parseCommit(mergeCommit.getParent(1));
+            upToDate = walk.isMergedInto(theirs, ours);
+            walk.reset();
+            fastForward = !upToDate && walk.isMergedInto(ours, theirs);
+            if (upToDate || fastForward) {
+                //Not needed by any strategy
+                base = null;
+            } else {
+                walk.reset();
+                walk.setRevFilter(RevFilter.MERGE_BASE);
+                walk.markStart(ours);
+                walk.markStart(theirs);
+                base = walk.next();
+            }
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public ObjectReader getReader() {
+        return reader;
+    }
+
+    public RevCommit getOurs() {
+        return ours;
+    }
+
+    public RevCommit getTheirs() {
+        return theirs;
+    }
+
+    /**
+     * @return tree of the merge base, null if the parents have no common ancestor
+     */
+    public RevTree getBaseTree() {
+        return base != null ? base.getTree() : null;
+    }
+
+    /**
+     * Records the result of a trivial merge, which is the same for all strategies.
+     *
+     * @param merge receives the state of the merge
+     * @return ID of the merged tree, null if the merge is not trivial
+     */
+    public ObjectId mergeTrivial(Merge merge) {
+        if (upToDate) {
+            merge.setState(MergeResult.MergeStatus.ALREADY_UP_TO_DATE.name());
+            return ours.getTree();
+        }
+        if (fastForward) {
+            merge.setState(MergeResult.MergeStatus.FAST_FORWARD.name());
+            return theirs.getTree();
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        reader.close();
+    }
+}
@@ -0,0 +1,39 @@
+package de.fosd.merge_history_analyser.merge;
+
+import de.fosd.merge_history_analyser.data.Merge;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.IOException;
+
+/**
+ * A way to merge the parents of a merge scenario in memory, e.g. a merge strategy of JGit or an external merge tool.
+ * <p>
+ * All strategies compared on a merge scenario get the same {@link MergeInput}, so the parents and their merge base
+ * are only loaded once. Implementations must not change the working tree or the index of the repository.
+ *
+ * @author Martin Gruber
+ */
+public interface MergeStrategy {
+
+    /**
+     * @return name of the strategy in the results, e.g. recursive
+     */
+    String getName();
+
+    /**
+     * @return identifies the strategy and its configuration in stored results, by default its name
+     */
+    default String getKey() {
+        return getName();
+    }
+
+    /**
+     * Merges the parents and records the result.
+     *
+     * @param input parents of the merge scenario
+     * @param merge receives the state, the conflicting files and their conflict details
+     * @return ID of the merged tree, which is written to the repository, null if the merge did not succeed
+     * @throws IOException if objects can not be read or written
+     */
+    ObjectId merge(MergeInput input, Merge merge) throws IOException;
+}
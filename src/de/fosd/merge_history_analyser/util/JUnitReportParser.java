@@ -0,0 +1,143 @@
+package de.fosd.merge_history_analyser.util;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the JUnit XML reports ({@code TEST-*.xml}) written by Gradle, Maven Surefire/Failsafe or Ant.
+ * <p>
+ * The reports are searched in the whole working tree, so every layout and every sub project is found.
+ * Only reports written after a given point in time are read, which excludes reports of earlier runs.
+ * The files are parsed in parallel with StAX, so no report has to be held in memory as a whole.
+ *
+ * @author Martin Gruber
+ */
+public class JUnitReportParser {
+
+    private static final ThreadLocal<XMLInputFactory> FACTORY = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        return factory;
+    });
+
+    /**
+     * Result of a single test case as written by the former collectResults task.
+     */
+    public static class TestResult {
+        public final String name;
+        public final String result;
+        public final String duration;
+
+        TestResult(String name, String result, String duration) {
+            this.name = name;
+            this.result = result;
+            this.duration = duration;
+        }
+    }
+
+    /**
+     * Finds and parses all reports below the given directory.
+     *
+     * @param root          working tree to search
+     * @param modifiedSince only read reports written at or after this time in milliseconds
+     * @return all test cases ordered by report path
+     * @throws IOException if the working tree can not be searched
+     */
+    public static List<TestResult> parse(Path root, long modifiedSince) throws IOException {
+        List<Path> reports = findReports(root, modifiedSince);
+        Collections.sort(reports);
+        return reports.parallelStream()
+                .map(JUnitReportParser::parseReport)
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    private static List<Path> findReports(Path root, long modifiedSince) throws IOException {
+        //File systems may store modification times in seconds only
+        long since = modifiedSince / 1000 * 1000;
+        List<Path> reports = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                String name = dir.getFileName() == null ? "" : dir.getFileName().toString();
+                return name.equals(".git") || name.equals(".gradle") || name.equals("node_modules")
+                        ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String name = file.getFileName().toString();
+                if (name.startsWith("TEST-") && name.endsWith(".xml") && attrs.lastModifiedTime().toMillis() >= since) {
+                    reports.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return reports;
+    }
+
+    /**
+     * Parses one report. A testcase with a failure or an error fails, a testcase with skipped is skipped.
+     */
+    private static List<TestResult> parseReport(Path report) {
+        List<TestResult> results = new ArrayList<>();
+        try (InputStream input = Files.newInputStream(report)) {
+            XMLStreamReader reader = FACTORY.get().createXMLStreamReader(input);
+            try {
+                String name = null;
+                String result = null;
+                String duration = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        switch (reader.getLocalName()) {
+                            case "testcase":
+                                String className = reader.getAttributeValue(null, "classname");
+                                name = (className == null ? "" : className + ".") + reader.getAttributeValue(null, "name");
+                                duration = reader.getAttributeValue(null, "time");
+                                result = "pass";
+                                break;
+                            case "failure":
+                            case "error":
+                                if (name != null) {
+                                    result = "fail";
+                                }
+                                break;
+                            case "skipped":
+                                if (name != null && !result.equals("fail")) {
+                                    result = "skip";
+                                }
+                                break;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("testcase")) {
+                        results.add(new TestResult(name, result, duration));
+                        name = null;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException e) {
+            Logger.log(Logger.Level.WARN, "Could not read test report " + report + ": " + e.getMessage());
+        }
+        return results;
+    }
+}
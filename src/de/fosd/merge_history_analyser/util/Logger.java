@@ -1,16 +1,58 @@
 package de.fosd.merge_history_analyser.util;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Created by martin on 19.05.16.
+ * <p>
+ * Messages are put into a lock-free ring buffer and written by a background thread, so logging does not block
+ * the analysis. The writer flushes once the buffer is drained, i.e. many messages are written with one flush.
+ * If the buffer is full, logging threads wait until the writer made room, so no message is lost.
+ * <p>
+ * Each thread can set a tag, e.g. the merge it works on, which is put in front of all its messages.
  */
 public class Logger {
 
-    private static Writer writer;
-    private static boolean v;
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final int CAPACITY = 1 << 14;
+
+    private static final AtomicReferenceArray<String> buffer = new AtomicReferenceArray<>(CAPACITY);
+
+    /**
+     * Next position to be claimed by a logging thread
+     */
+    private static final AtomicLong head = new AtomicLong();
+
+    /**
+     * Next position to be written by the writer thread
+     */
+    private static volatile long tail;
+
+    private static final ThreadLocal<String> tag = new ThreadLocal<>();
+
+    private static volatile Level level = Level.INFO;
+
+    private static volatile Writer writer;
+    private static volatile boolean v;
 
-    public static void init(String filename, boolean verbose) {
+    private static Thread writerThread;
+
+    private static volatile boolean closed;
+
+    /**
+     * Set by the writer thread once all messages logged before {@link #close()} are written
+     */
+    private static boolean drained;
+
+    public static synchronized void init(String filename, boolean verbose) {
         v = verbose;
 
         try {
@@ -18,25 +60,133 @@ public class Logger {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        closed = false;
+        if (writerThread == null) {
+            writerThread = new Thread(Logger::write, "logger");
+            writerThread.setDaemon(true);
+            writerThread.start();
+            //Write the remaining messages if the analysis ends with an exception
+            Runtime.getRuntime().addShutdownHook(new Thread(Logger::close, "logger-shutdown"));
+        }
+    }
+
+    /**
+     * Messages below the given level are dropped. The default is INFO.
+     */
+    public static void setLevel(Level level) {
+        Logger.level = level;
+    }
+
+    /**
+     * Sets the tag put in front of all messages of the current thread.
+     *
+     * @param tag tag of the current thread, null to remove it
+     */
+    public static void setTag(String tag) {
+        if (tag == null) {
+            Logger.tag.remove();
+        } else {
+            Logger.tag.set(tag);
+        }
+    }
+
+    /**
+     * @return tag of the current thread or null
+     */
+    public static String getTag() {
+        return tag.get();
     }
 
     public static void log(String message) {
-        if(v) {
-            System.out.println(message);
+        log(Level.INFO, message);
+    }
+
+    public static void log(Level level, String message) {
+        if (level.compareTo(Logger.level) < 0) {
+            return;
         }
-        try {
-            writer.write(message+"\n");
-            writer.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
+        String tag = Logger.tag.get();
+        String line = tag == null ? message + "\n" : "[" + tag + "] " + message + "\n";
+
+        long position = head.getAndIncrement();
+        //Wait until the writer made room
+        while (position - tail >= CAPACITY) {
+            LockSupport.unpark(writerThread);
+            Thread.yield();
+        }
+        buffer.set((int) position & (CAPACITY - 1), line);
+        if (position == tail) {
+            //The writer may be waiting for new messages
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    /**
+     * Writes all messages until the logger is closed and the buffer is empty.
+     */
+    private static void write() {
+        Writer console = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8));
+        while (true) {
+            int slot = (int) tail & (CAPACITY - 1);
+            String line = buffer.get(slot);
+            if (line != null) {
+                buffer.set(slot, null);
+                tail = tail + 1;
+                try {
+                    if (v) {
+                        console.write(line);
+                    }
+                    if (writer != null) {
+                        writer.write(line);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
+            //Buffer is drained, write everything in one go
+            try {
+                console.flush();
+                if (writer != null) {
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (closed && head.get() == tail) {
+                synchronized (Logger.class) {
+                    try {
+                        if (writer != null) {
+                            writer.close();
+                            writer = null;
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    drained = true;
+                    Logger.class.notifyAll();
+                }
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
         }
     }
 
-    public static void close() {
+    /**
+     * Waits until all messages are written and closes the log file.
+     */
+    public static synchronized void close() {
+        if (closed || writerThread == null) {
+            return;
+        }
+        drained = false;
+        closed = true;
         try {
-            writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+            while (!drained) {
+                LockSupport.unpark(writerThread);
+                Logger.class.wait(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
@@ -0,0 +1,97 @@
+package de.fosd.merge_history_analyser.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Thread-safe cache which computes the value of every key at most once.
+ * If several threads ask for the same key at the same time, only one computes the value and the others wait for it.
+ * <p>
+ * A memoizer which does not retain its values only joins computations which are running at the same time.
+ * Finished values are released, e.g. because the computation reloads them cheaply from disk.
+ *
+ * @author Martin Gruber
+ */
+public class Memoizer<K, V> {
+
+    private final ConcurrentMap<K, Future<V>> cache = new ConcurrentHashMap<>();
+
+    private final boolean retain;
+
+    /**
+     * Creates a memoizer which retains all values.
+     */
+    public Memoizer() {
+        this(true);
+    }
+
+    /**
+     * @param retain true to keep the values, false to release each value once its computation finished
+     */
+    public Memoizer(boolean retain) {
+        this.retain = retain;
+    }
+
+    /**
+     * Returns the value for the given key and computes it if it is not known yet.
+     * If the computation fails, nothing is cached and the next request computes the value again.
+     *
+     * @param key         key of the value
+     * @param computation computes the value
+     * @return the cached or computed value
+     */
+    public V compute(K key, Callable<V> computation) {
+        Future<V> future = cache.get(key);
+        if (future == null) {
+            FutureTask<V> task = new FutureTask<>(computation);
+            future = cache.putIfAbsent(key, task);
+            if (future == null) {
+                future = task;
+                task.run();
+                if (!retain) {
+                    //Threads which are waiting already still get the value
+                    cache.remove(key, task);
+                }
+            }
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            cache.remove(key, future);
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the value for the given key without computing it.
+     *
+     * @param key key of the value
+     * @return the value or null if it is not computed yet or its computation failed
+     */
+    public V get(K key) {
+        Future<V> future = cache.get(key);
+        if (future == null || !future.isDone()) {
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException | InterruptedException e) {
+            return null;
+        }
+    }
+
+    public boolean contains(K key) {
+        return cache.containsKey(key);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+}
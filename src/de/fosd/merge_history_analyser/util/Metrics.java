@@ -0,0 +1,321 @@
+package de.fosd.merge_history_analyser.util;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects timings, counters and gauges of the whole run, so it can be seen where the time of a run is spent.
+ * <p>
+ * Timings are recorded in histograms with exponential buckets, so recording is a few atomic additions and
+ * percentiles are accurate to a factor of two. The metrics can be written to a CSV or JSON file and served as text
+ * on {@code http://localhost:<port>/metrics} while the analysis is running.
+ *
+ * @author Martin Gruber
+ */
+public class Metrics {
+
+    /**
+     * Histogram of durations. Bucket i counts durations of less than 2^i microseconds.
+     */
+    public static class Histogram {
+        private static final int BUCKETS = 42;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            sumNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return sum of all durations in seconds
+         */
+        public double getSum() {
+            return sumNanos.sum() / 1e9;
+        }
+
+        /**
+         * @return longest duration in seconds
+         */
+        public double getMax() {
+            return maxNanos.get() / 1e9;
+        }
+
+        /**
+         * @param quantile e.g. 0.5 for the median
+         * @return upper bound of the bucket containing the quantile in seconds, 0 if nothing was recorded
+         */
+        public double getQuantile(double quantile) {
+            long total = getCount();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min((1L << i) / 1e6, getMax());
+                }
+            }
+            return getMax();
+        }
+    }
+
+    private static final long START = System.nanoTime();
+
+    private static final ConcurrentMap<String, Histogram> timers = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<String, LongAdder> busyNanos = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService exporter;
+
+    private static HttpServer server;
+
+    /**
+     * Records the time since {@param startNanos}.
+     *
+     * @param name       name of the timed phase, e.g. build
+     * @param startNanos result of {@link System#nanoTime()} at the start of the phase
+     */
+    public static void record(String name, long startNanos) {
+        timers.computeIfAbsent(name, key -> new Histogram()).record(System.nanoTime() - startNanos);
+    }
+
+    public static void increment(String name) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Registers a value which is read whenever the metrics are exported, e.g. the length of a queue.
+     *
+     * @param name  name of the gauge
+     * @param value supplies the current value
+     */
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Records that a worker of the given pool was busy since {@param startNanos}.
+     * The utilisation of the pool is its busy time divided by the time of the run and the number of workers,
+     * which has to be registered as gauge {@code <pool>.size}.
+     *
+     * @param pool       name of the worker pool
+     * @param startNanos result of {@link System#nanoTime()} when the worker started its job
+     */
+    public static void busy(String pool, long startNanos) {
+        busyNanos.computeIfAbsent(pool, key -> new LongAdder()).add(System.nanoTime() - startNanos);
+    }
+
+    public static Histogram getTimer(String name) {
+        return timers.get(name);
+    }
+
+    public static long getCounter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * @return current values of all gauges, including the utilisation of every worker pool in percent
+     */
+    private static Map<String, Long> gaugeValues() {
+        Map<String, Long> values = new TreeMap<>();
+        gauges.forEach((name, value) -> values.put(name, value.getAsLong()));
+        long elapsed = System.nanoTime() - START;
+        busyNanos.forEach((pool, busy) -> {
+            Long size = values.get(pool + ".size");
+            if (size != null && size > 0 && elapsed > 0) {
+                values.put(pool + ".utilisation", Math.round(100.0 * busy.sum() / (size * elapsed)));
+            }
+        });
+        return values;
+    }
+
+    /**
+     * Writes all metrics as CSV or, if the file name ends with .json, as JSON.
+     * The file is replaced atomically, so readers never see a partial file.
+     *
+     * @param file file to write
+     */
+    public static void write(File file) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            if (file.getName().endsWith(".json")) {
+                writeJson(writer);
+            } else {
+                writeCsv(writer);
+            }
+        } catch (IOException e) {
+            Logger.log(Logger.Level.WARN, "Could not write metrics: " + e.getMessage());
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Logger.log(Logger.Level.WARN, "Could not write metrics to " + file);
+        }
+    }
+
+    private static void writeCsv(Writer writer) throws IOException {
+        writer.write("Metric,Type,Count,Sum,Mean,P50,P90,P99,Max,Value\n");
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(timers).entrySet()) {
+            Histogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            writer.write(String.format(Locale.ROOT, "%s,timer,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,\n", entry.getKey(),
+                    count, histogram.getSum(), count == 0 ? 0 : histogram.getSum() / count,
+                    histogram.getQuantile(0.5), histogram.getQuantile(0.9), histogram.getQuantile(0.99),
+                    histogram.getMax()));
+        }
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            writer.write(entry.getKey() + ",counter,,,,,,,," + entry.getValue().sum() + "\n");
+        }
+        for (Map.Entry<String, Long> entry : gaugeValues().entrySet()) {
+            writer.write(entry.getKey() + ",gauge,,,,,,,," + entry.getValue() + "\n");
+        }
+    }
+
+    private static void writeJson(Writer writer) throws IOException {
+        writer.write("{\"uptime\": " + (System.nanoTime() - START) / 1000000000 + ",\n \"timers\": {");
+        String separator = "\n  ";
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(timers).entrySet()) {
+            Histogram histogram = entry.getValue();
+            writer.write(String.format(Locale.ROOT,
+                    "%s\"%s\": {\"count\": %d, \"sum\": %.3f, \"p50\": %.3f, \"p90\": %.3f, \"p99\": %.3f, \"max\": %.3f}",
+                    separator, entry.getKey(), histogram.getCount(), histogram.getSum(), histogram.getQuantile(0.5),
+                    histogram.getQuantile(0.9), histogram.getQuantile(0.99), histogram.getMax()));
+            separator = ",\n  ";
+        }
+        writer.write("},\n \"counters\": {");
+        separator = "\n  ";
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            writer.write(separator + "\"" + entry.getKey() + "\": " + entry.getValue().sum());
+            separator = ",\n  ";
+        }
+        writer.write("},\n \"gauges\": {");
+        separator = "\n  ";
+        for (Map.Entry<String, Long> entry : gaugeValues().entrySet()) {
+            writer.write(separator + "\"" + entry.getKey() + "\": " + entry.getValue());
+            separator = ",\n  ";
+        }
+        writer.write("}}\n");
+    }
+
+    /**
+     * @return all metrics in the text format of Prometheus, durations in seconds
+     */
+    static String text() {
+        StringWriter writer = new StringWriter();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(timers).entrySet()) {
+            String name = metricName(entry.getKey()) + "_seconds";
+            Histogram histogram = entry.getValue();
+            writer.write("# TYPE " + name + " summary\n");
+            for (double quantile : new double[]{0.5, 0.9, 0.99}) {
+                writer.write(String.format(Locale.ROOT, "%s{quantile=\"%s\"} %.6f\n",
+                        name, quantile, histogram.getQuantile(quantile)));
+            }
+            writer.write(String.format(Locale.ROOT, "%s_sum %.6f\n", name, histogram.getSum()));
+            writer.write(name + "_count " + histogram.getCount() + "\n");
+        }
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            String name = metricName(entry.getKey()) + "_total";
+            writer.write("# TYPE " + name + " counter\n");
+            writer.write(name + " " + entry.getValue().sum() + "\n");
+        }
+        for (Map.Entry<String, Long> entry : gaugeValues().entrySet()) {
+            String name = metricName(entry.getKey());
+            writer.write("# TYPE " + name + " gauge\n");
+            writer.write(name + " " + entry.getValue() + "\n");
+        }
+        return writer.toString();
+    }
+
+    private static String metricName(String name) {
+        return "mha_" + name.replaceAll("[^a-zA-Z0-9_]", "_");
+    }
+
+    /**
+     * Writes the metrics to the given file every minute and at the end of the run.
+     *
+     * @param file CSV or JSON file, see {@link #write(File)}
+     */
+    public static synchronized void exportTo(File file) {
+        if (exporter == null) {
+            exporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        exporter.scheduleWithFixedDelay(() -> write(file), 1, 1, TimeUnit.MINUTES);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> write(file), "metrics-shutdown"));
+    }
+
+    /**
+     * Serves the metrics on {@code /metrics} of the given port. Only connections from this machine are accepted.
+     *
+     * @param port local port
+     * @throws IOException if the port can not be opened
+     */
+    public static synchronized void serve(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = text().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(null);
+        server.start();
+        Logger.log("Serving metrics on http://localhost:" + port + "/metrics");
+    }
+
+    /**
+     * Stops the metrics endpoint.
+     */
+    public static synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package de.fosd.merge_history_analyser.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Runs an external process and drains its standard output and standard error at the same time.
+ * <p>
+ * Both streams are read line by line by background threads while the process is running, so a process with
+ * a lot of output can not block on a full pipe. Every line is passed to the listeners of its stream. Only the
+ * last lines of each stream are kept in memory, the complete output can be spilled to a file.
+ * <p>
+ * A wall-clock timeout and limits for CPU time and memory can be set. The timeout is enforced by GNU
+ * {@code timeout} if it is installed, which signals the whole process group, so processes started by the script
+ * are killed as well. Limits are set with {@code ulimit} in a shell wrapping the command.
+ *
+ * @author Martin Gruber
+ */
+public class ProcessRunner {
+
+    private static final ExecutorService DRAINERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "process-drainer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Seconds between SIGTERM and SIGKILL when the timeout is reached
+     */
+    private static final long KILL_AFTER_SECONDS = 30;
+
+    private static final boolean TIMEOUT_COMMAND_AVAILABLE = isOnPath("timeout");
+
+    private final List<String> command;
+
+    private long timeoutSeconds;
+
+    private long cpuLimitSeconds;
+
+    private long memoryLimitKb;
+
+    private final List<Consumer<String>> outputListeners = new ArrayList<>();
+
+    private final List<Consumer<String>> errorListeners = new ArrayList<>();
+
+    private int tailLines = 100;
+
+    private File spillFile;
+
+    public ProcessRunner(String... command) {
+        this.command = Arrays.asList(command);
+    }
+
+    /**
+     * Registers a listener which is called for every line written to standard output.
+     * Listeners are called from a background thread.
+     */
+    public ProcessRunner onOutput(Consumer<String> listener) {
+        outputListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Registers a listener which is called for every line written to standard error.
+     * Listeners are called from a background thread.
+     */
+    public ProcessRunner onError(Consumer<String> listener) {
+        errorListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Sets how many of the last lines of each stream are kept in memory. The default is 100.
+     */
+    public ProcessRunner setTailLines(int tailLines) {
+        this.tailLines = tailLines;
+        return this;
+    }
+
+    /**
+     * Writes the complete output of both streams to the given file.
+     */
+    public ProcessRunner setSpillFile(File spillFile) {
+        this.spillFile = spillFile;
+        return this;
+    }
+
+    /**
+     * Kills the process and all processes started by it after the given wall-clock time.
+     *
+     * @param timeoutSeconds seconds until the process is killed, 0 to wait forever
+     */
+    public ProcessRunner setTimeout(long timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+        return this;
+    }
+
+    /**
+     * Limits the CPU time of each process started ({@code ulimit -t}).
+     *
+     * @param cpuLimitSeconds seconds of CPU time, 0 for no limit
+     */
+    public ProcessRunner setCpuLimit(long cpuLimitSeconds) {
+        this.cpuLimitSeconds = cpuLimitSeconds;
+        return this;
+    }
+
+    /**
+     * Limits the virtual memory of each process started ({@code ulimit -v}).
+     *
+     * @param memoryLimitKb kilobytes of virtual memory, 0 for no limit
+     */
+    public ProcessRunner setMemoryLimit(long memoryLimitKb) {
+        this.memoryLimitKb = memoryLimitKb;
+        return this;
+    }
+
+    private List<String> createCommand() {
+        List<String> fullCommand = new ArrayList<>();
+        if (timeoutSeconds > 0 && TIMEOUT_COMMAND_AVAILABLE) {
+            fullCommand.addAll(Arrays.asList("timeout", "--kill-after=" + KILL_AFTER_SECONDS, String.valueOf(timeoutSeconds)));
+        }
+        if (cpuLimitSeconds > 0 || memoryLimitKb > 0) {
+            StringBuilder limits = new StringBuilder();
+            if (cpuLimitSeconds > 0) {
+                limits.append("ulimit -t ").append(cpuLimitSeconds).append("; ");
+            }
+            if (memoryLimitKb > 0) {
+                limits.append("ulimit -v ").append(memoryLimitKb).append("; ");
+            }
+            limits.append("exec \"$0\" \"$@\"");
+            fullCommand.addAll(Arrays.asList("/bin/sh", "-c", limits.toString()));
+        }
+        fullCommand.addAll(command);
+        return fullCommand;
+    }
+
+    private static boolean isOnPath(String executable) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return false;
+        }
+        for (String directory : path.split(File.pathSeparator)) {
+            if (new File(directory, executable).canExecute()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts the process and waits until it terminated and both streams are drained.
+     *
+     * @return exit code, whether the timeout was reached and the last lines of the output
+     * @throws IOException          if the process can not be started
+     * @throws InterruptedException if the thread is interrupted while waiting, the process is destroyed then
+     */
+    public Result run() throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        Process process = new ProcessBuilder(createCommand()).start();
+        process.getOutputStream().close();
+
+        Writer spill = spillFile == null ? null
+                : new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile), StandardCharsets.UTF_8));
+        Deque<String> outputTail = new ArrayDeque<>();
+        Deque<String> errorTail = new ArrayDeque<>();
+        String tag = Logger.getTag();
+        Future<?> output = DRAINERS.submit(() -> drain(process.getInputStream(), outputListeners, outputTail, spill, tag));
+        Future<?> error = DRAINERS.submit(() -> drain(process.getErrorStream(), errorListeners, errorTail, spill, tag));
+        try {
+            boolean timedOut = false;
+            if (timeoutSeconds > 0) {
+                //The timeout command normally terminates the process before, then this is only a fallback
+                long wait = TIMEOUT_COMMAND_AVAILABLE ? timeoutSeconds + KILL_AFTER_SECONDS + 10 : timeoutSeconds;
+                if (!process.waitFor(wait, TimeUnit.SECONDS)) {
+                    timedOut = true;
+                    destroyTree(process);
+                }
+            }
+            int exitCode = process.waitFor();
+            if (timeoutSeconds > 0 && TIMEOUT_COMMAND_AVAILABLE) {
+                //124: terminated by timeout, 137: killed after the process ignored the termination
+                long elapsed = System.currentTimeMillis() - start;
+                timedOut |= exitCode == 124 || (exitCode == 137 && elapsed >= TimeUnit.SECONDS.toMillis(timeoutSeconds));
+            }
+            if (timedOut) {
+                //Processes which escaped the process group may still hold the pipes open
+                waitForDrainer(output);
+                waitForDrainer(error);
+            } else {
+                output.get();
+                error.get();
+            }
+            return new Result(exitCode, timedOut, copy(outputTail), copy(errorTail));
+        } catch (InterruptedException e) {
+            destroyTree(process);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IOException("Could not read output of " + command, e.getCause());
+        } finally {
+            if (spill != null) {
+                spill.close();
+            }
+        }
+    }
+
+    /**
+     * Kills the process and all processes it started, e.g. test JVMs forked by the build or a Gradle daemon.
+     * The descendants are killed first, since they are no longer known once their parent is gone.
+     */
+    private static void destroyTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static List<String> copy(Deque<String> tail) {
+        synchronized (tail) {
+            return new ArrayList<>(tail);
+        }
+    }
+
+    private void waitForDrainer(Future<?> drainer) throws InterruptedException, ExecutionException {
+        try {
+            drainer.get(KILL_AFTER_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            Logger.log(Logger.Level.WARN, "\t\tOutput of " + command + " still open after the timeout, stop reading it");
+            drainer.cancel(true);
+        }
+    }
+
+    private Void drain(InputStream stream, List<Consumer<String>> listeners, Deque<String> tail, Writer spill,
+                       String tag) throws IOException {
+        //Listeners log with the tag of the thread which started the process
+        Logger.setTag(tag);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                for (Consumer<String> listener : listeners) {
+                    listener.accept(line);
+                }
+                if (tailLines > 0) {
+                    synchronized (tail) {
+                        if (tail.size() == tailLines) {
+                            tail.removeFirst();
+                        }
+                        tail.addLast(line);
+                    }
+                }
+                if (spill != null) {
+                    synchronized (spill) {
+                        spill.write(line);
+                        spill.write('\n');
+                    }
+                }
+            }
+        } finally {
+            Logger.setTag(null);
+        }
+        return null;
+    }
+
+    /**
+     * Outcome of a finished process.
+     */
+    public static class Result {
+        private final int exitCode;
+        private final boolean timedOut;
+        private final List<String> outputTail;
+        private final List<String> errorTail;
+
+        Result(int exitCode, boolean timedOut, List<String> outputTail, List<String> errorTail) {
+            this.exitCode = exitCode;
+            this.timedOut = timedOut;
+            this.outputTail = outputTail;
+            this.errorTail = errorTail;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        /**
+         * @return true if the process was killed because it reached the timeout
+         */
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * @return the last lines written to standard output
+         */
+        public List<String> getOutputTail() {
+            return outputTail;
+        }
+
+        /**
+         * @return the last lines written to standard error
+         */
+        public List<String> getErrorTail() {
+            return errorTail;
+        }
+    }
+}
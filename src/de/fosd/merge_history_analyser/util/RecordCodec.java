@@ -0,0 +1,96 @@
+package de.fosd.merge_history_analyser.util;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+import de.fosd.merge_history_analyser.data.Build;
+import de.fosd.merge_history_analyser.data.ConflictDetailsConverter;
+import de.fosd.merge_history_analyser.data.TestsConverter;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.TreeSet;
+
+/**
+ * Serializes analysis results to a single line of XML, e.g. to store them or to send them to another process.
+ * <p>
+ * The XStream annotations are not applied, because the aliases of the result schema (e.g. two parents named parent)
+ * can not be read back. Line breaks within the XML are escaped. Instances are thread-safe.
+ * <p>
+ * Records are read from files and sockets, so only the result classes and the few collection classes they contain
+ * are deserialized. Other types are rejected instead of being instantiated.
+ *
+ * @author Martin Gruber
+ */
+public class RecordCodec {
+
+    private final StaxDriver driver = new StaxDriver();
+
+    private final XStream xstream;
+
+    public RecordCodec() {
+        xstream = new XStream(driver);
+        XStream.setupDefaultSecurity(xstream);
+        xstream.allowTypesByWildcard(new String[]{"de.fosd.merge_history_analyser.data.**"});
+        //Only the collections the results consist of, other implementations can be abused as gadgets
+        xstream.allowTypes(new Class[]{ArrayList.class, LinkedList.class, HashSet.class, LinkedHashSet.class,
+                TreeSet.class});
+        //Test names must be stored, not their ids
+        xstream.registerConverter(new TestsConverter(false));
+        xstream.registerConverter(new ConflictDetailsConverter(false));
+    }
+
+    /**
+     * @param record object to serialize
+     * @return XML without line breaks
+     */
+    public String encode(Object record) {
+        return xstream.toXML(record).replace("\r", "&#13;").replace("\n", "&#10;");
+    }
+
+    /**
+     * @param line XML written by {@link #encode(Object)}
+     * @return the deserialized object
+     * @throws RuntimeException if the XML can not be read or contains a type which is not allowed
+     */
+    public Object decode(String line) {
+        return xstream.fromXML(line);
+    }
+
+    /**
+     * Reads only the build of a record written by {@link #encode(Object)}, e.g. of an analysed commit.
+     * The elements after the build, e.g. the results of all tests, are not deserialized.
+     *
+     * @param line XML written by {@link #encode(Object)}
+     * @return the build or null if the record has none
+     * @throws RuntimeException if the XML can not be read
+     */
+    public Build decodeBuild(String line) {
+        HierarchicalStreamReader reader = driver.createReader(new StringReader(line));
+        try {
+            while (reader.hasMoreChildren()) {
+                reader.moveDown();
+                if (reader.getNodeName().equals("build")) {
+                    Build build = new Build();
+                    while (reader.hasMoreChildren()) {
+                        reader.moveDown();
+                        if (reader.getNodeName().equals("state")) {
+                            build.setState(reader.getValue());
+                        } else if (reader.getNodeName().equals("runtime")) {
+                            build.setRuntime(Double.parseDouble(reader.getValue()));
+                        }
+                        reader.moveUp();
+                    }
+                    return build;
+                }
+                reader.moveUp();
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package de.fosd.merge_history_analyser.util;
+
+import de.fosd.merge_history_analyser.data.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only store for analysis results which survives crashes and restarts.
+ * <p>
+ * Every record is one line of the form {@code key TAB xml}, written by a {@link RecordCodec}. Only the position of
+ * each record is kept in memory, records are read from disk on request. A record written later overrides earlier records with the same key.
+ * An incomplete last line, e.g. after a crash, is cut off when the store is opened.
+ *
+ * @author Martin Gruber
+ */
+public class ResultStore implements Closeable {
+
+    private final RandomAccessFile file;
+
+    private final RecordCodec codec = new RecordCodec();
+
+    /**
+     * key -> {offset, length} of the serialized record
+     */
+    private final Map<String, long[]> index = new HashMap<>();
+
+    /**
+     * Opens or creates a result store.
+     *
+     * @param filename file the records are stored in
+     * @throws IOException if the file can not be opened
+     */
+    public ResultStore(String filename) throws IOException {
+        file = new RandomAccessFile(filename, "rw");
+        load();
+    }
+
+    private void load() throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long lineStart = 0;
+        long position = 0;
+        int read;
+        file.seek(0);
+        while ((read = file.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++, position++) {
+                if (buffer[i] == '\n') {
+                    addToIndex(line.toString("UTF-8"), lineStart, position);
+                    line.reset();
+                    lineStart = position + 1;
+                } else if (line.size() < 512) {
+                    //The key is at the beginning of the line, the rest is not needed here
+                    line.write(buffer[i]);
+                }
+            }
+        }
+        if (lineStart < file.length()) {
+            Logger.log(Logger.Level.WARN, "Removing incomplete record at the end of the result store");
+            file.setLength(lineStart);
+        }
+        Logger.log("Loaded " + index.size() + " records from result store");
+    }
+
+    private void addToIndex(String lineStart, long offset, long end) {
+        int separator = lineStart.indexOf('\t');
+        if (separator < 0) {
+            return;
+        }
+        String key = lineStart.substring(0, separator);
+        long valueOffset = offset + key.getBytes(StandardCharsets.UTF_8).length + 1;
+        index.put(key, new long[]{valueOffset, end - valueOffset});
+    }
+
+    /**
+     * Returns the record stored for the given key.
+     *
+     * @param key key of the record
+     * @return the stored record or null if there is none
+     */
+    public synchronized Object get(String key) {
+        long[] position = index.get(key);
+        if (position == null) {
+            return null;
+        }
+        try {
+            return codec.decode(read(position));
+        } catch (IOException | RuntimeException e) {
+            Logger.log(Logger.Level.WARN, "Could not read record " + key + " from result store: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns only the build of the record stored for the given key, see {@link RecordCodec#decodeBuild(String)}.
+     *
+     * @param key key of the record
+     * @return the stored build or null if there is none
+     */
+    public synchronized Build getBuild(String key) {
+        long[] position = index.get(key);
+        if (position == null) {
+            return null;
+        }
+        try {
+            return codec.decodeBuild(read(position));
+        } catch (IOException | RuntimeException e) {
+            Logger.log(Logger.Level.WARN, "Could not read record " + key + " from result store: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private String read(long[] position) throws IOException {
+        file.seek(position[0]);
+        byte[] bytes = new byte[(int) position[1]];
+        file.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends a record to the store.
+     *
+     * @param key    key of the record, must not contain whitespace
+     * @param record object to store
+     */
+    public synchronized void put(String key, Object record) {
+        String xml = codec.encode(record);
+        byte[] keyBytes = (key + "\t").getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = xml.getBytes(StandardCharsets.UTF_8);
+        try {
+            long offset = file.length();
+            file.seek(offset);
+            file.write(keyBytes);
+            file.write(valueBytes);
+            file.write('\n');
+            index.put(key, new long[]{offset + keyBytes.length, valueBytes.length});
+        } catch (IOException e) {
+            Logger.log(Logger.Level.ERROR, "Could not write record " + key + " to result store: " + e.getMessage());
+        }
+    }
+
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+}
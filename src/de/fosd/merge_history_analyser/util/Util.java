@@ -9,6 +9,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Source;
@@ -39,6 +44,62 @@ public class Util {
         }
     }
 
+    /**
+     * Calculates a SHA-1 hash over the contents of the given files.
+     * Files which are null are part of the hash as well, so a missing script changes the result.
+     *
+     * @param filenames files to hash, may contain null
+     * @return hex representation of the hash
+     */
+    public static String hashFiles(String... filenames) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String filename : filenames) {
+                if (filename == null) {
+                    digest.update((byte) 0);
+                } else {
+                    digest.update((byte) 1);
+                    digest.update(Files.readAllBytes(Paths.get(filename)));
+                }
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new RuntimeException("Could not hash " + String.join(", ", filenames), e);
+        }
+    }
+
+    /**
+     * Calculates a SHA-1 hash over the given texts.
+     *
+     * @param texts texts to hash, may contain null
+     * @return hex representation of the hash
+     */
+    public static String hashStrings(String... texts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String text : texts) {
+                if (text == null) {
+                    digest.update((byte) 0);
+                } else {
+                    digest.update((byte) 1);
+                    digest.update(text.getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                }
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
     public static String formatXml(String xml) {
         try {
             Transformer serializer = SAXTransformerFactory.newInstance().newTransformer();
@@ -0,0 +1,135 @@
+package de.fosd.merge_history_analyser.data;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trip of {@link ConflictDetails} through both formats of the {@link ConflictDetailsConverter}
+ * and the indexing of the chunks by file.
+ *
+ * @author Martin Gruber
+ */
+public class ConflictDetailsConverterTest {
+
+    @Test
+    public void roundTripWithAttributes() {
+        String xml = toXML(details(), true);
+        assertTrue(xml, xml.contains(">12,3/12,5 21,1/26,0</file>"));
+        assertTrue(xml, xml.contains(">1,3/1,0</file>"));
+        assertEqual(details(), fromXML(xml, true));
+    }
+
+    @Test
+    public void roundTripWithElements() {
+        String xml = toXML(details(), false);
+        assertTrue(xml, xml.contains("<ranges>12,3/12,5 21,1/26,0</ranges>"));
+        assertTrue(xml, xml.contains("<ranges></ranges>") || xml.contains("<ranges/>"));
+        assertEqual(details(), fromXML(xml, false));
+    }
+
+    @Test
+    public void roundTripWithoutFiles() {
+        ConflictDetails details = new ConflictDetails();
+        assertEqual(details, fromXML(toXML(details, true), true));
+        assertEqual(details, fromXML(toXML(details, false), false));
+    }
+
+    @Test
+    public void chunksOfFiles() {
+        ConflictDetails details = details();
+        assertEquals(4, details.getFiles());
+        assertEquals(3, details.getChunks());
+        assertEquals(12, details.getLines());
+
+        assertEquals(2, details.getChunks(0));
+        assertEquals(9, details.getLines(0));
+        assertEquals(20, details.getBegin1(0, 1));
+        assertEquals(21, details.getEnd1(0, 1));
+        assertEquals(25, details.getBegin2(0, 1));
+        assertEquals(25, details.getEnd2(0, 1));
+
+        assertEquals(0, details.getChunks(1));
+        assertEquals(0, details.getLines(1));
+
+        assertEquals(ConflictType.MODIFY_DELETE, details.getType(2));
+        assertEquals(1, details.getChunks(2));
+        assertEquals(3, details.getLines(2));
+        assertEquals(0, details.getBegin2(2, 0));
+        assertEquals(0, details.getEnd2(2, 0));
+
+        assertEquals(0, details.getChunks(3));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void chunkOfFileWithoutChunks() {
+        details().getBegin1(1, 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void chunkOfNextFile() {
+        details().getBegin1(0, 2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void missingFile() {
+        details().getChunks(4);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void chunkWithoutFile() {
+        new ConflictDetails().addChunk(0, 1, 0, 1);
+    }
+
+    /**
+     * Files with and without chunks, including the empty range of a modify/delete conflict
+     * and a file without chunks between two others.
+     */
+    private static ConflictDetails details() {
+        ConflictDetails details = new ConflictDetails();
+        details.addFile("src/A.java", ConflictType.CONTENT);
+        details.addChunk(11, 14, 11, 16);
+        details.addChunk(20, 21, 25, 25);
+        details.addFile("src/B.java", ConflictType.ADD_ADD);
+        details.addFile("src/C.java", ConflictType.MODIFY_DELETE);
+        details.addChunk(0, 3, 0, 0);
+        details.addFile("lib/d.jar", ConflictType.CONTENT);
+        details.trimToSize();
+        return details;
+    }
+
+    private static XStream xstream(boolean attributes) {
+        XStream xstream = new XStream(new StaxDriver());
+        xstream.allowTypes(new Class[]{ConflictDetails.class});
+        xstream.registerConverter(new ConflictDetailsConverter(attributes));
+        return xstream;
+    }
+
+    private static String toXML(ConflictDetails details, boolean attributes) {
+        return xstream(attributes).toXML(details);
+    }
+
+    private static ConflictDetails fromXML(String xml, boolean attributes) {
+        return (ConflictDetails) xstream(attributes).fromXML(xml);
+    }
+
+    private static void assertEqual(ConflictDetails expected, ConflictDetails actual) {
+        assertEquals(expected.getFiles(), actual.getFiles());
+        assertEquals(expected.getChunks(), actual.getChunks());
+        assertEquals(expected.getLines(), actual.getLines());
+        for (int file = 0; file < expected.getFiles(); file++) {
+            assertEquals(expected.getPath(file), actual.getPath(file));
+            assertEquals(expected.getType(file), actual.getType(file));
+            assertEquals(expected.getChunks(file), actual.getChunks(file));
+            for (int chunk = 0; chunk < expected.getChunks(file); chunk++) {
+                assertEquals(expected.getBegin1(file, chunk), actual.getBegin1(file, chunk));
+                assertEquals(expected.getEnd1(file, chunk), actual.getEnd1(file, chunk));
+                assertEquals(expected.getBegin2(file, chunk), actual.getBegin2(file, chunk));
+                assertEquals(expected.getEnd2(file, chunk), actual.getEnd2(file, chunk));
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package de.fosd.merge_history_analyser.data;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static de.fosd.merge_history_analyser.data.TestDiff.Change.ADDED;
+import static de.fosd.merge_history_analyser.data.TestDiff.Change.FIXED;
+import static de.fosd.merge_history_analyser.data.TestDiff.Change.NEWLY_FAILING;
+import static de.fosd.merge_history_analyser.data.TestDiff.Change.PUSHED_DIFFERS;
+import static de.fosd.merge_history_analyser.data.TestResult.FAIL;
+import static de.fosd.merge_history_analyser.data.TestResult.PASS;
+import static de.fosd.merge_history_analyser.data.TestResult.SKIP;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Classification of a single test by its results on the remerge, the parents and the pushed commit.
+ * A null result means the test was not run on that commit.
+ *
+ * @author Martin Gruber
+ */
+public class TestDiffTest {
+
+    private static final String TREE = "1111111111111111111111111111111111111111";
+
+    private static final String OTHER_TREE = "2222222222222222222222222222222222222222";
+
+    @Test
+    public void unchanged() {
+        assertNull(classify(TREE, OTHER_TREE, PASS, PASS, PASS, PASS));
+        assertNull(classify(TREE, OTHER_TREE, FAIL, FAIL, PASS, FAIL));
+    }
+
+    @Test
+    public void added() {
+        assertEquals(ADDED, classify(TREE, OTHER_TREE, PASS, null, null, FAIL));
+        assertEquals(ADDED, classify(TREE, TREE, FAIL, null, null, null));
+    }
+
+    @Test
+    public void pushedDiffers() {
+        assertEquals(PUSHED_DIFFERS, classify(TREE, OTHER_TREE, PASS, PASS, PASS, FAIL));
+        assertEquals(PUSHED_DIFFERS, classify(TREE, OTHER_TREE, FAIL, PASS, PASS, PASS));
+    }
+
+    @Test
+    public void pushedWithSameTree() {
+        assertNull(classify(TREE, TREE, PASS, PASS, PASS, FAIL));
+        assertEquals(NEWLY_FAILING, classify(TREE, TREE, FAIL, PASS, PASS, PASS));
+    }
+
+    @Test
+    public void pushedWithUnknownTree() {
+        //Results of earlier versions do not contain the trees
+        assertNull(classify(null, null, PASS, PASS, PASS, FAIL));
+        assertEquals(NEWLY_FAILING, classify(TREE, null, FAIL, PASS, PASS, PASS));
+    }
+
+    @Test
+    public void pushedNotPassedOrFailed() {
+        assertEquals(NEWLY_FAILING, classify(TREE, OTHER_TREE, FAIL, PASS, null, SKIP));
+        assertEquals(NEWLY_FAILING, classify(TREE, OTHER_TREE, FAIL, PASS, PASS, null));
+    }
+
+    @Test
+    public void newlyFailing() {
+        assertEquals(NEWLY_FAILING, classify(TREE, OTHER_TREE, FAIL, PASS, SKIP, FAIL));
+        assertEquals(NEWLY_FAILING, classify(TREE, OTHER_TREE, FAIL, null, PASS, FAIL));
+    }
+
+    @Test
+    public void fixed() {
+        assertEquals(FIXED, classify(TREE, OTHER_TREE, PASS, FAIL, PASS, PASS));
+        assertEquals(FIXED, classify(TREE, OTHER_TREE, PASS, PASS, FAIL, PASS));
+    }
+
+    @Test
+    public void noTestsOnRemerge() {
+        MergeScenario mergeScenario = scenario(TREE, OTHER_TREE);
+        mergeScenario.getParent1().setTests(tests(FAIL));
+        assertEquals(0, TestDiff.compute(mergeScenario).getEntries().size());
+    }
+
+    private static TestDiff.Change classify(String remergeTree, String pushedTree, TestResult remerge,
+                                            TestResult parent1, TestResult parent2, TestResult pushed) {
+        MergeScenario mergeScenario = scenario(remergeTree, pushedTree);
+        mergeScenario.setTests(tests(remerge));
+        mergeScenario.getParent1().setTests(tests(parent1));
+        mergeScenario.getParent2().setTests(tests(parent2));
+        mergeScenario.getPushed().setTests(tests(pushed));
+        List<TestDiff.Entry> entries = TestDiff.compute(mergeScenario).getEntries();
+        if (entries.isEmpty()) {
+            return null;
+        }
+        assertEquals(1, entries.size());
+        assertEquals("Test.test", entries.get(0).getName());
+        return entries.get(0).getChange();
+    }
+
+    private static MergeScenario scenario(String remergeTree, String pushedTree) {
+        MergeScenario mergeScenario = new MergeScenario("3333333333333333333333333333333333333333",
+                "4444444444444444444444444444444444444444", "5555555555555555555555555555555555555555");
+        Merge merge = new Merge();
+        merge.setState("MERGED");
+        merge.setTree(remergeTree);
+        mergeScenario.setMerge(merge);
+        mergeScenario.getPushed().setTree(pushedTree);
+        return mergeScenario;
+    }
+
+    private static Tests tests(TestResult result) {
+        Tests tests = new Tests();
+        if (result != null) {
+            tests.addTestCase("Test.test", result.getLabel(), "0.1");
+        }
+        tests.trimToSize();
+        return tests;
+    }
+}
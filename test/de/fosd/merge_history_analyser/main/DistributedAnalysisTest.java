@@ -0,0 +1,117 @@
+package de.fosd.merge_history_analyser.main;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeResult;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a coordinator and two workers in separate JVMs on a small generated repository.
+ *
+ * @author Martin Gruber
+ */
+public class DistributedAnalysisTest {
+
+    private static final int MERGES = 6;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void workersAnalyseAllMerges() throws Exception {
+        File repository = folder.newFolder("repository");
+        List<String> merges = createRepository(repository);
+        File output = new File(folder.getRoot(), "result.xml");
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        List<Process> processes = new ArrayList<>();
+        try {
+            Process coordinator = start("coordinator", repository,
+                    "-o", output.getPath(), "--coordinator", String.valueOf(port));
+            processes.add(coordinator);
+            for (String worker : new String[]{"worker1", "worker2"}) {
+                File clone = new File(folder.getRoot(), worker);
+                Git.cloneRepository().setURI(repository.toURI().toString()).setDirectory(clone).call().close();
+                processes.add(start(worker, clone, "--worker", "localhost:" + port));
+            }
+            for (Process process : processes) {
+                assertTrue("Analysis did not finish", process.waitFor(5, TimeUnit.MINUTES));
+                assertEquals(0, process.exitValue());
+            }
+        } finally {
+            for (Process process : processes) {
+                process.destroyForcibly();
+            }
+        }
+
+        String result = FileUtils.readFileToString(output, StandardCharsets.UTF_8);
+        for (String merge : merges) {
+            assertTrue("Missing result of " + merge, result.contains("<commitID>" + merge + "</commitID>"));
+        }
+    }
+
+    /**
+     * Creates a history with merges of branches which change different files.
+     *
+     * @return IDs of the merges
+     */
+    private static List<String> createRepository(File directory) throws Exception {
+        List<String> merges = new ArrayList<>();
+        try (Git git = Git.init().setDirectory(directory).call()) {
+            commit(git, directory, "README", "0");
+            for (int i = 0; i < MERGES; i++) {
+                String branch = "topic" + i;
+                git.checkout().setCreateBranch(true).setName(branch).call();
+                commit(git, directory, branch + ".txt", String.valueOf(i));
+                git.checkout().setName("master").call();
+                commit(git, directory, "master" + i + ".txt", String.valueOf(i));
+                MergeResult result = git.merge().include(git.getRepository().getRef(branch)).call();
+                merges.add(result.getNewHead().getName());
+            }
+        }
+        return merges;
+    }
+
+    private static void commit(Git git, File directory, String file, String content) throws Exception {
+        FileUtils.writeStringToFile(new File(directory, file), content, StandardCharsets.UTF_8);
+        git.add().addFilepattern(file).call();
+        git.commit().setMessage(file).call();
+    }
+
+    /**
+     * Starts the analyser in a new JVM with the class path and JVM arguments of this one.
+     */
+    private Process start(String name, File repository, String... options) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MergeHistoryAnalyser.class.getName());
+        command.addAll(Arrays.asList("-l", repository.getPath(), "-nb", "-nt", "-nv"));
+        command.addAll(Arrays.asList(options));
+        return new ProcessBuilder(command)
+                .directory(folder.getRoot())
+                .redirectErrorStream(true)
+                .redirectOutput(new File(folder.getRoot(), name + ".log"))
+                .start();
+    }
+}
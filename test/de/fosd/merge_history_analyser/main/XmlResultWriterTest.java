@@ -0,0 +1,118 @@
+package de.fosd.merge_history_analyser.main;
+
+import de.fosd.merge_history_analyser.data.AnalysedCommit;
+import de.fosd.merge_history_analyser.data.Build;
+import de.fosd.merge_history_analyser.data.Merge;
+import de.fosd.merge_history_analyser.data.MergeScenario;
+import de.fosd.merge_history_analyser.data.Tests;
+import de.fosd.merge_history_analyser.util.RecordCodec;
+import org.eclipse.jgit.api.Git;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The children of a merge scenario and of its commits keep their positions, which scripts like
+ * tools/xml2pickle.py rely on.
+ *
+ * @author Martin Gruber
+ */
+public class XmlResultWriterTest {
+
+    private static final String MERGE = "1111111111111111111111111111111111111111";
+
+    private static final String PARENT1 = "2222222222222222222222222222222222222222";
+
+    private static final String PARENT2 = "3333333333333333333333333333333333333333";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void childOrder() throws Exception {
+        File repository = folder.newFolder("repository");
+        Git.init().setDirectory(repository).call().close();
+        Project project = new Project(repository.getPath(), null, null, null, false);
+        File output = new File(folder.getRoot(), "result.xml");
+        try (XmlResultWriter writer = new XmlResultWriter(output.getPath(), project)) {
+            writer.write(scenario());
+        }
+
+        Element mergeScenario = children(DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(output)
+                .getDocumentElement()).get(0);
+        List<Element> children = children(mergeScenario);
+        assertEquals(Arrays.asList("commitID", "merge", "build", "tests", "parent", "parent", "pushed"),
+                names(children));
+        assertEquals("aaaa", children.get(1).getAttribute("tree"));
+        for (int i = 4; i < 7; i++) {
+            assertEquals(Arrays.asList("commitID", "build", "tests"), names(children(children.get(i))));
+        }
+        assertEquals("bbbb", children.get(4).getAttribute("tree"));
+        assertEquals("dddd", children.get(6).getAttribute("tree"));
+    }
+
+    @Test
+    public void treesAreKeptInRecords() {
+        RecordCodec codec = new RecordCodec();
+        MergeScenario mergeScenario = (MergeScenario) codec.decode(codec.encode(scenario()));
+        assertEquals("aaaa", mergeScenario.getMerge().getTree());
+        assertEquals("bbbb", mergeScenario.getParent1().getTree());
+        assertEquals("cccc", mergeScenario.getParent2().getTree());
+        assertEquals("dddd", mergeScenario.getPushed().getTree());
+    }
+
+    private static MergeScenario scenario() {
+        MergeScenario mergeScenario = new MergeScenario(MERGE, PARENT1, PARENT2);
+        Merge merge = new Merge();
+        merge.setState("MERGED");
+        merge.setTree("aaaa");
+        mergeScenario.setMerge(merge);
+        mergeScenario.setBuild(new Build("PASSED", 1));
+        mergeScenario.setTests(tests());
+        analysed(mergeScenario.getParent1(), "bbbb");
+        analysed(mergeScenario.getParent2(), "cccc");
+        analysed(mergeScenario.getPushed(), "dddd");
+        return mergeScenario;
+    }
+
+    private static void analysed(AnalysedCommit commit, String tree) {
+        commit.setTree(tree);
+        commit.setBuild(new Build("PASSED", 1));
+        commit.setTests(tests());
+    }
+
+    private static Tests tests() {
+        Tests tests = new Tests();
+        tests.addTestCase("Test.test", "pass", "0.1");
+        tests.trimToSize();
+        return tests;
+    }
+
+    private static List<Element> children(Element element) {
+        List<Element> children = new ArrayList<>();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                children.add((Element) child);
+            }
+        }
+        return children;
+    }
+
+    private static List<String> names(List<Element> elements) {
+        List<String> names = new ArrayList<>();
+        for (Element element : elements) {
+            names.add(element.getTagName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,49 @@
+package de.fosd.merge_history_analyser.util;
+
+import de.fosd.merge_history_analyser.data.Merge;
+import de.fosd.merge_history_analyser.data.MergeScenario;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Records of results are read back, records with other types are rejected.
+ *
+ * @author Martin Gruber
+ */
+public class RecordCodecTest {
+
+    private final RecordCodec codec = new RecordCodec();
+
+    @Test
+    public void roundTrip() {
+        MergeScenario mergeScenario = new MergeScenario("1111111111111111111111111111111111111111",
+                "2222222222222222222222222222222222222222", "3333333333333333333333333333333333333333");
+        mergeScenario.getMerge().setState("CONFLICTING");
+        mergeScenario.getMerge().setConflicts(new HashSet<>(Arrays.asList("A.java", "B.java")));
+        Merge strategyMerge = new Merge();
+        strategyMerge.setStrategy("resolve");
+        strategyMerge.setState("MERGED");
+        mergeScenario.setStrategyMerges(new ArrayList<>(Collections.singletonList(strategyMerge)));
+
+        MergeScenario read = (MergeScenario) codec.decode(codec.encode(mergeScenario));
+        assertEquals(mergeScenario.getMerge().getConflicts(), read.getMerge().getConflicts());
+        assertEquals("resolve", read.getStrategyMerges().get(0).getStrategy());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void otherCollection() {
+        codec.decode(codec.encode(new PriorityQueue<>(Collections.singletonList("A"))));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void otherType() {
+        codec.decode("<java.lang.ProcessBuilder><command><string>true</string></command></java.lang.ProcessBuilder>");
+    }
+}
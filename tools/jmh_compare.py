@@ -0,0 +1,43 @@
+import csv
+from sys import argv, exit
+
+# Compares two result files of "gradle jmh" (build/reports/jmh/results.csv), e.g. with the baseline
+# jmh/baseline.csv recorded by "gradle jmhBaseline". "gradle jmhCompare" runs the benchmarks and this script.
+# usage: python jmh_compare.py baseline.csv results.csv [tolerance in percent, default 10]
+# Exits with 1 if a benchmark got slower by more than the tolerance.
+
+
+def read(filename):
+    results = {}
+    with open(filename) as f:
+        for row in csv.DictReader(f):
+            params = ",".join(
+                "%s=%s" % (key[len("Param: "):], value)
+                for key, value in sorted(row.items()) if key.startswith("Param: ") and value)
+            results[(row["Benchmark"], params)] = (float(row["Score"]), row["Unit"])
+    return results
+
+baseline = read(argv[1])
+current = read(argv[2])
+tolerance = float(argv[3]) if len(argv) > 3 else 10.0
+
+regressions = 0
+for key in sorted(current):
+    score, unit = current[key]
+    name = "%s(%s)" % key
+    if key not in baseline:
+        print("%-80s %12.3f %-8s new" % (name, score, unit))
+        continue
+    base, baseUnit = baseline[key]
+    if unit != baseUnit or base == 0:
+        print("%-80s %12.3f %-8s not comparable" % (name, score, unit))
+        continue
+    change = (score - base) / base * 100
+    # Scores of throughput modes are better if higher
+    slower = -change if unit.startswith("ops/") else change
+    marker = "REGRESSION" if slower > tolerance else ""
+    if marker:
+        regressions += 1
+    print("%-80s %12.3f %-8s %+7.1f%% %s" % (name, score, unit, change, marker))
+
+exit(1 if regressions else 0)